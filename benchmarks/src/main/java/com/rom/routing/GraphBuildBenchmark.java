@@ -0,0 +1,52 @@
+package com.rom.routing;
+
+import com.rom.routing.core.PathTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building of the CSR graph out of a parsed task by {@link GraphBuilder#build()}, with and without reverse edges,
+ * by one and several threads. Tasks of fewer than two chunks of {@link GraphBuilder#MIN_CHUNK_PATHS} paths
+ * are built by one thread anyway.
+ *
+ * @author Roman Katerinenko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBuildBenchmark {
+    @Param({"test10", "test30", Workloads.SYNTHETIC})
+    public String workload;
+
+    @Param({"false", "true"})
+    public boolean reverseEdges;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private PathTask pathTask;
+
+    @Setup
+    public void setUp() {
+        pathTask = Workloads.parse(Workloads.load(workload));
+    }
+
+    @Benchmark
+    public Graph build() {
+        return new GraphBuilder(pathTask, reverseEdges, parallelism).build();
+    }
+}
@@ -0,0 +1,44 @@
+package com.rom.routing;
+
+import com.rom.routing.core.PathTask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of a whole task description by {@link com.rom.routing.io.TaskParser#parse(java.io.InputStream)}.
+ *
+ * @author Roman Katerinenko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    @Param({"test10", "test30", Workloads.SYNTHETIC})
+    public String workload;
+
+    private byte[] taskDescription;
+
+    @Setup
+    public void setUp() {
+        taskDescription = Workloads.load(workload);
+    }
+
+    @Benchmark
+    public PathTask parse() {
+        return Workloads.parse(taskDescription);
+    }
+}
@@ -0,0 +1,81 @@
+package com.rom.routing;
+
+import com.rom.routing.core.PathTask;
+import com.rom.routing.core.Query;
+import com.rom.routing.core.Solution;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answering of a single path or nearby query by {@link RoutingEngine#query(Query)} in the calling thread.
+ * Queries are random ones over stations of the workload, every call takes the next one.
+ * <p>
+ * Options are given as in the command line, separated by spaces. By default the tree cache and the distance table
+ * are off, so every query is a Dijkstra search; e.g. {@code -p options=--landmarks=8} measures another solver.
+ *
+ * @author Roman Katerinenko
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryBenchmark {
+    private static final int QUERIES_AMOUNT = 1024;
+
+    @Param({"test10", "test30", Workloads.SYNTHETIC})
+    public String workload;
+
+    @Param({"--tree-cache=0 --distance-table=0"})
+    public String options;
+
+    @Param({"1000"})
+    public int nearbyTravelTime;
+
+    private RoutingEngine engine;
+    private List<Query> pathQueries;
+    private List<Query> nearbyQueries;
+    private int nextPathQuery;
+    private int nextNearbyQuery;
+
+    @Setup
+    public void setUp() {
+        PathTask pathTask = Workloads.parse(Workloads.load(workload));
+        engine = RoutingEngine.create(pathTask, RoutingOptions.parse(options.trim().split("\\s+")));
+        pathQueries = Workloads.pathQueries(pathTask, QUERIES_AMOUNT);
+        nearbyQueries = Workloads.nearbyQueries(pathTask, QUERIES_AMOUNT, nearbyTravelTime);
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public Solution path() {
+        Query query = pathQueries.get(nextPathQuery);
+        nextPathQuery = (nextPathQuery + 1) % QUERIES_AMOUNT;
+        return engine.query(query);
+    }
+
+    @Benchmark
+    public Solution nearby() {
+        Query query = nearbyQueries.get(nextNearbyQuery);
+        nextNearbyQuery = (nextNearbyQuery + 1) % QUERIES_AMOUNT;
+        return engine.query(query);
+    }
+}
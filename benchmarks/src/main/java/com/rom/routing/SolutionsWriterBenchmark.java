@@ -0,0 +1,76 @@
+package com.rom.routing;
+
+import com.rom.routing.core.PathTask;
+import com.rom.routing.core.Query;
+import com.rom.routing.core.Solution;
+import com.rom.routing.io.SolutionsWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting of a batch of path and nearby solutions by {@link SolutionsWriter} into a stream
+ * which drops the bytes, so only encoding is measured.
+ *
+ * @author Roman Katerinenko
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolutionsWriterBenchmark {
+    private static final int QUERIES_AMOUNT = 1024;
+
+    @Param({"test10", Workloads.SYNTHETIC})
+    public String workload;
+
+    private List<Solution> solutions;
+
+    @Setup
+    public void setUp() {
+        PathTask pathTask = Workloads.parse(Workloads.load(workload));
+        List<Query> queries = new ArrayList<>(Workloads.pathQueries(pathTask, QUERIES_AMOUNT));
+        queries.addAll(Workloads.nearbyQueries(pathTask, QUERIES_AMOUNT, 1000));
+        solutions = new ArrayList<>(queries.size());
+        try (RoutingEngine engine = RoutingEngine.create(pathTask, new RoutingOptions())) {
+            for (Query query : queries) {
+                solutions.add(engine.query(query));
+            }
+        }
+    }
+
+    @Benchmark
+    public void write(Blackhole blackhole) {
+        SolutionsWriter writer = new SolutionsWriter(new OutputStream() {
+            @Override
+            public void write(int b) {
+                blackhole.consume(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                blackhole.consume(bytes);
+            }
+        });
+        for (Solution solution : solutions) {
+            solution.accept(writer);
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,349 @@
+package com.rom.routing;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates random task descriptions in the format of {@link com.rom.routing.io.TaskParser}: routes between
+ * stations named after Berlin U-bahn and S-bahn stations, then path and nearby queries between them.
+ * The same options and seed always give the same task. Routes are written as they are generated,
+ * so tasks of millions of routes take little memory.
+ * <p>
+ * Options are given as {@code --name=value}:
+ * <ul>
+ * <li>{@code --stations=N} - amount of stations, 1000 by default</li>
+ * <li>{@code --routes-per-station=N} - amount of routes from every station, i.e. density, 8 by default</li>
+ * <li>{@code --topology=random|local|grid} - where routes go: to any station, to stations with close ids
+ * (within {@code --locality}) or to stations of a square grid within {@code --locality} cells; local by default</li>
+ * <li>{@code --locality=N} - 100 by default</li>
+ * <li>{@code --weights=uniform|exponential|distance} - distribution of travel times in
+ * [{@code --min-time}, {@code --max-time}]: uniform, exponential with mean of a quarter of the range, or
+ * proportional to the distance the route covers in the topology, give or take a quarter; uniform by default</li>
+ * <li>{@code --min-time=N}, {@code --max-time=N} - 1 and 600 by default</li>
+ * <li>{@code --paths=N}, {@code --nears=N} - amount of path and nearby queries, 5 and 3 by default</li>
+ * <li>{@code --near-time=N} - travel time of nearby queries, {@code --max-time} by default</li>
+ * <li>{@code --seed=N} - 42 by default</li>
+ * <li>{@code --output=FILE} - the standard output by default</li>
+ * </ul>
+ *
+ * @author Roman Katerinenko
+ */
+public final class WorkloadGenerator {
+    enum Topology {RANDOM, LOCAL, GRID}
+
+    enum Weights {UNIFORM, EXPONENTIAL, DISTANCE}
+
+    private static final String STATION_NAMES = "/Berlin_s-bahn_and_u-bahn_station_names.txt";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private int stations = 1000;
+    private int routesPerStation = 8;
+    private Topology topology = Topology.LOCAL;
+    private int locality = 100;
+    private Weights weights = Weights.UNIFORM;
+    private int minTime = 1;
+    private int maxTime = 600;
+    private int paths = 5;
+    private int nears = 3;
+    private int nearTime = -1;
+    private long seed = 42;
+    private String output;
+
+    public static void main(String[] args) throws IOException {
+        WorkloadGenerator generator = parse(args);
+        if (generator.output == null) {
+            generator.write(System.out);
+        } else {
+            try (OutputStream outputStream = new FileOutputStream(generator.output)) {
+                generator.write(outputStream);
+            }
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if any argument is unknown or has wrong value
+     */
+    static WorkloadGenerator parse(String... args) {
+        WorkloadGenerator generator = new WorkloadGenerator();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg : arg.substring(0, separator);
+            String value = separator < 0 ? null : arg.substring(separator + 1);
+            switch (name) {
+                case "--stations":
+                    generator.setStations(parseInt(name, value));
+                    break;
+                case "--routes-per-station":
+                    generator.setRoutesPerStation(parseInt(name, value));
+                    break;
+                case "--topology":
+                    generator.setTopology(parseEnum(Topology.class, name, value));
+                    break;
+                case "--locality":
+                    generator.setLocality(parseInt(name, value));
+                    break;
+                case "--weights":
+                    generator.setWeights(parseEnum(Weights.class, name, value));
+                    break;
+                case "--min-time":
+                    generator.setMinTime(parseInt(name, value));
+                    break;
+                case "--max-time":
+                    generator.setMaxTime(parseInt(name, value));
+                    break;
+                case "--paths":
+                    generator.setPaths(parseInt(name, value));
+                    break;
+                case "--nears":
+                    generator.setNears(parseInt(name, value));
+                    break;
+                case "--near-time":
+                    generator.setNearTime(parseInt(name, value));
+                    break;
+                case "--seed":
+                    generator.setSeed(parseLong(name, value));
+                    break;
+                case "--output":
+                    generator.output = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        return generator;
+    }
+
+    WorkloadGenerator setStations(int stations) {
+        if (stations < 2) {
+            throw new IllegalArgumentException("There must be at least 2 stations, but was " + stations);
+        }
+        this.stations = stations;
+        return this;
+    }
+
+    WorkloadGenerator setRoutesPerStation(int routesPerStation) {
+        if (routesPerStation < 0) {
+            throw new IllegalArgumentException("Routes per station must not be negative, but was " + routesPerStation);
+        }
+        this.routesPerStation = routesPerStation;
+        return this;
+    }
+
+    WorkloadGenerator setTopology(Topology topology) {
+        this.topology = topology;
+        return this;
+    }
+
+    WorkloadGenerator setLocality(int locality) {
+        if (locality < 1) {
+            throw new IllegalArgumentException("Locality must be at least 1, but was " + locality);
+        }
+        this.locality = locality;
+        return this;
+    }
+
+    WorkloadGenerator setWeights(Weights weights) {
+        this.weights = weights;
+        return this;
+    }
+
+    WorkloadGenerator setMinTime(int minTime) {
+        if (minTime < 0) {
+            throw new IllegalArgumentException("Min travel time must not be negative, but was " + minTime);
+        }
+        this.minTime = minTime;
+        return this;
+    }
+
+    WorkloadGenerator setMaxTime(int maxTime) {
+        if (maxTime < 0) {
+            throw new IllegalArgumentException("Max travel time must not be negative, but was " + maxTime);
+        }
+        this.maxTime = maxTime;
+        return this;
+    }
+
+    WorkloadGenerator setPaths(int paths) {
+        if (paths < 0) {
+            throw new IllegalArgumentException("Amount of path queries must not be negative, but was " + paths);
+        }
+        this.paths = paths;
+        return this;
+    }
+
+    WorkloadGenerator setNears(int nears) {
+        if (nears < 0) {
+            throw new IllegalArgumentException("Amount of nearby queries must not be negative, but was " + nears);
+        }
+        this.nears = nears;
+        return this;
+    }
+
+    WorkloadGenerator setNearTime(int nearTime) {
+        if (nearTime < 0) {
+            throw new IllegalArgumentException("Travel time of nearby queries must not be negative, but was " + nearTime);
+        }
+        this.nearTime = nearTime;
+        return this;
+    }
+
+    WorkloadGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Writes the task in UTF-8, the stream is flushed but not closed.
+     *
+     * @throws IllegalArgumentException if the max travel time is less than the min one
+     */
+    void write(OutputStream outputStream) throws IOException {
+        if (maxTime < minTime) {
+            throw new IllegalArgumentException("Max travel time " + maxTime + " is less than the min one " + minTime);
+        }
+        String[] names = readStationNames();
+        Random random = new Random(seed);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new BufferedOutputStream(outputStream, BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write(Long.toString((long) stations * routesPerStation));
+        writer.write('\n');
+        int gridWidth = (int) Math.ceil(Math.sqrt(stations));
+        for (int station = 0; station < stations; station++) {
+            for (int i = 0; i < routesPerStation; i++) {
+                int target = nextTarget(random, station, gridWidth);
+                writeStation(writer, names, station);
+                writer.write(" -> ");
+                writeStation(writer, names, target);
+                writer.write(": ");
+                writer.write(Integer.toString(nextTravelTime(random, station, target, gridWidth)));
+                writer.write('\n');
+            }
+        }
+        for (int i = 0; i < paths; i++) {
+            writer.write("path ");
+            writeStation(writer, names, random.nextInt(stations));
+            writer.write(" -> ");
+            writeStation(writer, names, random.nextInt(stations));
+            writer.write('\n');
+        }
+        for (int i = 0; i < nears; i++) {
+            writer.write("near ");
+            writeStation(writer, names, random.nextInt(stations));
+            writer.write(", ");
+            writer.write(Integer.toString(nearTime < 0 ? maxTime : nearTime));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    private int nextTarget(Random random, int station, int gridWidth) {
+        int target;
+        do {
+            switch (topology) {
+                case RANDOM:
+                    target = random.nextInt(stations);
+                    break;
+                case LOCAL:
+                    target = Math.floorMod(station + random.nextInt(2 * locality + 1) - locality, stations);
+                    break;
+                default:
+                    int column = station % gridWidth + random.nextInt(2 * locality + 1) - locality;
+                    int row = station / gridWidth + random.nextInt(2 * locality + 1) - locality;
+                    target = column >= 0 && column < gridWidth ? row * gridWidth + column : -1;
+                    break;
+            }
+        } while (target < 0 || target >= stations || target == station);
+        return target;
+    }
+
+    private int nextTravelTime(Random random, int station, int target, int gridWidth) {
+        int range = maxTime - minTime;
+        double time;
+        switch (weights) {
+            case UNIFORM:
+                return minTime + random.nextInt(range + 1);
+            case EXPONENTIAL:
+                time = -Math.log(1 - random.nextDouble()) * range / 4;
+                break;
+            default:
+                // the longest route of the topology takes the whole range
+                time = range * Math.min(1, distance(station, target, gridWidth)) * (0.75 + 0.5 * random.nextDouble());
+                break;
+        }
+        return minTime + (int) Math.min(range, Math.round(time));
+    }
+
+    /**
+     * @return distance between the stations relative to the longest route of the topology
+     */
+    private double distance(int station, int target, int gridWidth) {
+        if (topology == Topology.GRID) {
+            int dx = station % gridWidth - target % gridWidth;
+            int dy = station / gridWidth - target / gridWidth;
+            return Math.sqrt(dx * dx + dy * dy) / (Math.sqrt(2) * locality);
+        }
+        int difference = Math.abs(station - target);
+        int ringDistance = Math.min(difference, stations - difference);
+        return topology == Topology.LOCAL ? (double) ringDistance / locality : ringDistance / (stations / 2.0);
+    }
+
+    private static void writeStation(Writer writer, String[] names, int station) throws IOException {
+        writer.write(names[station % names.length]);
+        if (station >= names.length) {
+            writer.write(Integer.toString(station / names.length));
+        }
+    }
+
+    private static String[] readStationNames() throws IOException {
+        List<String> names = new ArrayList<>();
+        InputStream inputStream = WorkloadGenerator.class.getResourceAsStream(STATION_NAMES);
+        if (inputStream == null) {
+            throw new IOException("No station names " + STATION_NAMES);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    names.add(line.trim());
+                }
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        try {
+            return Enum.valueOf(type, String.valueOf(value).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Option " + name + " has unknown value " + value);
+        }
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " requires an integer value, but was " + value);
+        }
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " requires a long value, but was " + value);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.rom.routing;
+
+import com.rom.routing.core.NearbyQuery;
+import com.rom.routing.core.Path;
+import com.rom.routing.core.PathQuery;
+import com.rom.routing.core.PathTask;
+import com.rom.routing.core.Query;
+import com.rom.routing.io.TaskParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Task descriptions benchmarks run on: the bundled workloads (test10, test30) and a synthetic one,
+ * which is a larger sparse graph with locality made by {@link WorkloadGenerator}, so searches behave like
+ * on a real network.
+ * Everything random is seeded, so every run gets the same workloads.
+ *
+ * @author Roman Katerinenko
+ */
+final class Workloads {
+    static final String SYNTHETIC = "synthetic";
+
+    private static final long SEED = 42;
+    private static final int SYNTHETIC_STATIONS = 20_000;
+    private static final int SYNTHETIC_ROUTES_PER_STATION = 6;
+    // routes of a station go to stations within this distance of ids
+    private static final int SYNTHETIC_LOCALITY = 200;
+
+    private Workloads() {
+    }
+
+    /**
+     * @param name name of a bundled workload (test10, test30) or {@link #SYNTHETIC}
+     * @return task description in UTF-8
+     */
+    static byte[] load(String name) {
+        if (SYNTHETIC.equals(name)) {
+            return generateSynthetic();
+        }
+        // bundled workloads spell nearby queries the old way
+        String task = new String(readResource("/" + name + ".txt"), StandardCharsets.UTF_8);
+        return task.replace("\nnearby ", "\nnear ").getBytes(StandardCharsets.UTF_8);
+    }
+
+    static PathTask parse(byte[] taskDescription) {
+        return TaskParser.parse(new ByteArrayInputStream(taskDescription));
+    }
+
+    /**
+     * @return random path queries between stations of the task
+     */
+    static List<Query> pathQueries(PathTask pathTask, int amount) {
+        List<String> stations = stationsOf(pathTask);
+        Random random = new Random(SEED);
+        List<Query> queries = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            queries.add(new PathQuery(stations.get(random.nextInt(stations.size())),
+                    stations.get(random.nextInt(stations.size()))));
+        }
+        return queries;
+    }
+
+    /**
+     * @return random nearby queries from stations of the task within the travel time
+     */
+    static List<Query> nearbyQueries(PathTask pathTask, int amount, int travelTime) {
+        List<String> stations = stationsOf(pathTask);
+        Random random = new Random(SEED);
+        List<Query> queries = new ArrayList<>(amount);
+        for (int i = 0; i < amount; i++) {
+            queries.add(new NearbyQuery(stations.get(random.nextInt(stations.size())), travelTime));
+        }
+        return queries;
+    }
+
+    private static List<String> stationsOf(PathTask pathTask) {
+        List<String> stations = new ArrayList<>();
+        for (Path path : pathTask.getPaths()) {
+            stations.add(path.getFromStation());
+        }
+        return stations;
+    }
+
+    private static byte[] generateSynthetic() {
+        ByteArrayOutputStream task = new ByteArrayOutputStream();
+        try {
+            new WorkloadGenerator()
+                    .setStations(SYNTHETIC_STATIONS)
+                    .setRoutesPerStation(SYNTHETIC_ROUTES_PER_STATION)
+                    .setTopology(WorkloadGenerator.Topology.LOCAL)
+                    .setLocality(SYNTHETIC_LOCALITY)
+                    .setSeed(SEED)
+                    .write(task);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return task.toByteArray();
+    }
+
+    private static byte[] readResource(String resource) {
+        try (InputStream inputStream = Workloads.class.getResourceAsStream(resource)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("No workload " + resource);
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                content.write(buffer, 0, read);
+            }
+            return content.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.rom.routing;
+
+import com.rom.routing.core.PathTask;
+import com.rom.routing.io.TaskParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * @author Roman Katerinenko
+ */
+public class WorkloadGeneratorTest {
+    @Test
+    public void checkTheSameSeedGivesTheSameParsableTask() throws IOException {
+        for (String topology : new String[]{"random", "local", "grid"}) {
+            String[] args = {"--stations=300", "--routes-per-station=4", "--topology=" + topology, "--locality=5",
+                    "--weights=distance", "--paths=7", "--nears=4", "--seed=" + Long.MAX_VALUE};
+            byte[] task = generate(args);
+            assertArrayEquals(task, generate(args));
+            PathTask pathTask = TaskParser.parse(new ByteArrayInputStream(task));
+            assertNotNull(pathTask);
+            assertEquals(300 * 4, pathTask.getPaths().size());
+            assertEquals(7 + 4, pathTask.getQueries().size());
+        }
+        assertFalse(Arrays.equals(generate("--seed=1"), generate("--seed=2")));
+    }
+
+    private static byte[] generate(String... args) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WorkloadGenerator.parse(args).write(outputStream);
+        return outputStream.toByteArray();
+    }
+}
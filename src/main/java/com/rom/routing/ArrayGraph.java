@@ -0,0 +1,100 @@
+package com.rom.routing;
+
+/**
+ * Package-local {@link Graph} keeping CSR arrays on the heap as primitive int arrays.
+ * Station names are kept in {@link StationIndex}.
+ *
+ * @author Roman Katerinenko
+ * @see GraphBuilder
+ */
+final class ArrayGraph extends Graph {
+    private final StationIndex stationIndex;
+    // edgeOffsets[v] is an index of the first outgoing edge of v, edgeOffsets[v + 1] is an index after the last one
+    private final int[] edgeOffsets;
+    private final int[] edgeTargets;
+    private final int[] edgeWeights;
+    // the same for incoming edges, all three are null when reverse edges aren't built
+    private final int[] reverseEdgeOffsets;
+    private final int[] reverseEdgeSources;
+    private final int[] reverseEdgeWeights;
+
+    ArrayGraph(StationIndex stationIndex, int[] edgeOffsets, int[] edgeTargets, int[] edgeWeights) {
+        this(stationIndex, edgeOffsets, edgeTargets, edgeWeights, null, null, null);
+    }
+
+    ArrayGraph(StationIndex stationIndex, int[] edgeOffsets, int[] edgeTargets, int[] edgeWeights,
+               int[] reverseEdgeOffsets, int[] reverseEdgeSources, int[] reverseEdgeWeights) {
+        this.stationIndex = stationIndex;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.edgeWeights = edgeWeights;
+        this.reverseEdgeOffsets = reverseEdgeOffsets;
+        this.reverseEdgeSources = reverseEdgeSources;
+        this.reverseEdgeWeights = reverseEdgeWeights;
+    }
+
+    @Override
+    int getVertexCount() {
+        return stationIndex.size();
+    }
+
+    @Override
+    int getEdgeCount() {
+        return edgeTargets.length;
+    }
+
+    @Override
+    int getEdgesBegin(int vertex) {
+        return edgeOffsets[vertex];
+    }
+
+    @Override
+    int getEdgesEnd(int vertex) {
+        return edgeOffsets[vertex + 1];
+    }
+
+    @Override
+    int getEdgeTarget(int edge) {
+        return edgeTargets[edge];
+    }
+
+    @Override
+    int getEdgeWeight(int edge) {
+        return edgeWeights[edge];
+    }
+
+    @Override
+    boolean hasReverseEdges() {
+        return reverseEdgeOffsets != null;
+    }
+
+    @Override
+    int getReverseEdgesBegin(int vertex) {
+        return reverseEdgeOffsets[vertex];
+    }
+
+    @Override
+    int getReverseEdgesEnd(int vertex) {
+        return reverseEdgeOffsets[vertex + 1];
+    }
+
+    @Override
+    int getReverseEdgeSource(int reverseEdge) {
+        return reverseEdgeSources[reverseEdge];
+    }
+
+    @Override
+    int getReverseEdgeWeight(int reverseEdge) {
+        return reverseEdgeWeights[reverseEdge];
+    }
+
+    @Override
+    String getVertexName(int vertex) {
+        return stationIndex.getName(vertex);
+    }
+
+    @Override
+    int findVertexByStringId(String targetId) {
+        return stationIndex.findVertex(targetId);
+    }
+}
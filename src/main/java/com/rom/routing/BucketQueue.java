@@ -0,0 +1,132 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+
+/**
+ * Package-local monotone priority queue of vertex ids keyed by int travel times (Dial's algorithm).
+ * A vertex with key k is in the bucket k modulo the amount of buckets, which is greater than the max edge weight,
+ * so keys of a Dijkstra search, which lie within the max edge weight from the last polled key, never share a bucket.
+ * Buckets are doubly-linked lists threaded through per-vertex arrays, so insertion and decrease-key are O(1),
+ * and polling takes O(1) plus the buckets skipped, which are O(max edge weight) per query in total.
+ * <p>
+ * Note! Keys must not be less than the last polled key nor exceed it by the max edge weight or more.
+ * Searches of non-negative weights satisfy this, A* with arbitrary estimates doesn't.
+ * A bucket is FIFO, so among vertices with the same key the earlier inserted one is polled first,
+ * unless its key was decreased later.
+ *
+ * @author Roman Katerinenko
+ */
+final class BucketQueue implements VertexQueue {
+    // more buckets take more memory than a heap and more time to skip empty ones
+    static final int MAX_BUCKETS = 1 << 16;
+
+    private static final int NONE = -1;
+
+    private final int[] bucketHeads;
+    private final int[] bucketTails;
+    private final int bucketMask;
+    private final int[] keys;
+    private final int[] next;
+    private final int[] previous;
+    private int size;
+    // no key in the queue is less than it, it's the key of the last polled vertex at least
+    private int minKey;
+
+    /**
+     * @param maxEdgeWeight max weight of an edge a search relaxes, less than {@link #MAX_BUCKETS}
+     */
+    BucketQueue(int capacity, int maxEdgeWeight) {
+        if (maxEdgeWeight < 0 || maxEdgeWeight >= MAX_BUCKETS) {
+            throw new IllegalArgumentException("Max edge weight must be in [0, " + MAX_BUCKETS + "), but was "
+                    + maxEdgeWeight);
+        }
+        int bucketsAmount = Integer.highestOneBit(Math.max(maxEdgeWeight, 1)) << 1;
+        bucketHeads = new int[bucketsAmount];
+        bucketTails = new int[bucketsAmount];
+        bucketMask = bucketsAmount - 1;
+        Arrays.fill(bucketHeads, NONE);
+        keys = new int[capacity];
+        next = new int[capacity];
+        previous = new int[capacity];
+        Arrays.fill(keys, NONE);
+    }
+
+    /**
+     * @return true if the queue fits searches of the graph, i.e. its edge weights are small enough
+     */
+    static boolean isApplicable(int maxEdgeWeight) {
+        return maxEdgeWeight < MAX_BUCKETS;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void insertOrDecrease(int vertex, int key) {
+        if (keys[vertex] != NONE) {
+            unlink(vertex);
+        } else {
+            size++;
+        }
+        if (size == 1 || key < minKey) {
+            minKey = key;
+        }
+        keys[vertex] = key;
+        int bucket = key & bucketMask;
+        next[vertex] = NONE;
+        if (bucketHeads[bucket] == NONE) {
+            previous[vertex] = NONE;
+            bucketHeads[bucket] = vertex;
+        } else {
+            int tail = bucketTails[bucket];
+            previous[vertex] = tail;
+            next[tail] = vertex;
+        }
+        bucketTails[bucket] = vertex;
+    }
+
+    @Override
+    public int getMinKey() {
+        while (bucketHeads[minKey & bucketMask] == NONE) {
+            minKey++;
+        }
+        return minKey;
+    }
+
+    @Override
+    public int poll() {
+        int vertex = bucketHeads[getMinKey() & bucketMask];
+        unlink(vertex);
+        keys[vertex] = NONE;
+        size--;
+        return vertex;
+    }
+
+    /**
+     * Takes time proportional to the amount of vertices left in the queue plus the buckets they are spread over.
+     */
+    @Override
+    public void clear() {
+        while (size > 0) {
+            poll();
+        }
+    }
+
+    private void unlink(int vertex) {
+        int bucket = keys[vertex] & bucketMask;
+        int previousVertex = previous[vertex];
+        int nextVertex = next[vertex];
+        if (previousVertex == NONE) {
+            bucketHeads[bucket] = nextVertex;
+        } else {
+            next[previousVertex] = nextVertex;
+        }
+        if (nextVertex == NONE) {
+            bucketTails[bucket] = previousVertex;
+        } else {
+            previous[nextVertex] = previousVertex;
+        }
+    }
+}
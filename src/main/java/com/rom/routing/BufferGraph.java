@@ -0,0 +1,236 @@
+package com.rom.routing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Package-local {@link Graph} reading CSR arrays straight from int buffers, e.g. the ones mapped from a snapshot file
+ * ({@link GraphSnapshot}), so opening a graph doesn't parse or copy anything, or direct buffers a built graph is
+ * copied to ({@link #copyOffHeap(Graph)}). Either way the graph takes no heap but a fixed cache of decoded names,
+ * so garbage collections neither scan nor move it however large it is.
+ * <p>
+ * Station names are a blob of UTF-8 bytes with offsets of every name, and name to id lookup uses a stored
+ * open-addressing table of the same layout as {@link StationIndex} has. A lookup compares UTF-8 bytes of the name
+ * with the stored ones, so it decodes nothing. Decoded names are kept in a cache of {@link #NAME_CACHE_SIZE} entries
+ * indexed by vertex, so formatting solutions doesn't decode names of frequent stations again and again.
+ * <p>
+ * Note! Buffers are read with absolute gets only, so a graph is safe to share between threads.
+ *
+ * @author Roman Katerinenko
+ * @see GraphSnapshot
+ */
+final class BufferGraph extends Graph {
+    static final int NAME_CACHE_SIZE = 1 << 12;
+
+    private final int verticesAmount;
+    private final IntBuffer edgeOffsets;
+    private final IntBuffer edgeTargets;
+    private final IntBuffer edgeWeights;
+    // null when reverse edges aren't stored
+    private final IntBuffer reverseEdgeOffsets;
+    private final IntBuffer reverseEdgeSources;
+    private final IntBuffer reverseEdgeWeights;
+    // nameOffsets[v] is an index of the first byte of the name of v, nameOffsets[v + 1] is an index after the last one
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer nameBytes;
+    private final IntBuffer slots;
+    private final int slotMask;
+    // entry of a vertex is at vertex modulo the cache size, racy writes are harmless since entries are immutable
+    private final CachedName[] nameCache = new CachedName[NAME_CACHE_SIZE];
+
+    BufferGraph(IntBuffer edgeOffsets, IntBuffer edgeTargets, IntBuffer edgeWeights,
+                IntBuffer reverseEdgeOffsets, IntBuffer reverseEdgeSources, IntBuffer reverseEdgeWeights,
+                IntBuffer nameOffsets, ByteBuffer nameBytes, IntBuffer slots) {
+        this.verticesAmount = edgeOffsets.limit() - 1;
+        this.edgeOffsets = edgeOffsets;
+        this.edgeTargets = edgeTargets;
+        this.edgeWeights = edgeWeights;
+        this.reverseEdgeOffsets = reverseEdgeOffsets;
+        this.reverseEdgeSources = reverseEdgeSources;
+        this.reverseEdgeWeights = reverseEdgeWeights;
+        this.nameOffsets = nameOffsets;
+        this.nameBytes = nameBytes;
+        this.slots = slots;
+        this.slotMask = slots.limit() - 1;
+    }
+
+    /**
+     * Copies the graph to direct buffers of the native byte order, so it lives outside the heap.
+     *
+     * @throws IllegalArgumentException if an array of the graph doesn't fit a buffer, i.e. takes 2GB or more
+     */
+    static BufferGraph copyOffHeap(Graph graph) {
+        int verticesAmount = graph.getVertexCount();
+        int edgesAmount = graph.getEdgeCount();
+        String[] names = new String[verticesAmount];
+        byte[][] encodedNames = new byte[verticesAmount][];
+        long nameBytesAmount = 0;
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            names[vertex] = graph.getVertexName(vertex);
+            encodedNames[vertex] = names[vertex].getBytes(StandardCharsets.UTF_8);
+            nameBytesAmount += encodedNames[vertex].length;
+        }
+        if (nameBytesAmount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Station names take " + nameBytesAmount + " bytes, more than 2GB");
+        }
+        IntBuffer edgeOffsets = allocateInts(verticesAmount + 1);
+        IntBuffer edgeTargets = allocateInts(edgesAmount);
+        IntBuffer edgeWeights = allocateInts(edgesAmount);
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            edgeOffsets.put(vertex, graph.getEdgesBegin(vertex));
+        }
+        edgeOffsets.put(verticesAmount, edgesAmount);
+        for (int edge = 0; edge < edgesAmount; edge++) {
+            edgeTargets.put(edge, graph.getEdgeTarget(edge));
+            edgeWeights.put(edge, graph.getEdgeWeight(edge));
+        }
+        IntBuffer reverseEdgeOffsets = null;
+        IntBuffer reverseEdgeSources = null;
+        IntBuffer reverseEdgeWeights = null;
+        if (graph.hasReverseEdges()) {
+            reverseEdgeOffsets = allocateInts(verticesAmount + 1);
+            reverseEdgeSources = allocateInts(edgesAmount);
+            reverseEdgeWeights = allocateInts(edgesAmount);
+            for (int vertex = 0; vertex < verticesAmount; vertex++) {
+                reverseEdgeOffsets.put(vertex, graph.getReverseEdgesBegin(vertex));
+            }
+            reverseEdgeOffsets.put(verticesAmount, edgesAmount);
+            for (int edge = 0; edge < edgesAmount; edge++) {
+                reverseEdgeSources.put(edge, graph.getReverseEdgeSource(edge));
+                reverseEdgeWeights.put(edge, graph.getReverseEdgeWeight(edge));
+            }
+        }
+        IntBuffer nameOffsets = allocateInts(verticesAmount + 1);
+        ByteBuffer nameBytes = ByteBuffer.allocateDirect((int) nameBytesAmount);
+        int nameOffset = 0;
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            nameOffsets.put(vertex, nameOffset);
+            nameBytes.put(encodedNames[vertex]);
+            nameOffset += encodedNames[vertex].length;
+        }
+        nameOffsets.put(verticesAmount, nameOffset);
+        int[] slots = StationIndex.buildSlots(names);
+        IntBuffer slotBuffer = allocateInts(slots.length);
+        slotBuffer.put(slots);
+        return new BufferGraph(edgeOffsets, edgeTargets, edgeWeights,
+                reverseEdgeOffsets, reverseEdgeSources, reverseEdgeWeights, nameOffsets, nameBytes, slotBuffer);
+    }
+
+    private static IntBuffer allocateInts(int amount) {
+        if ((long) amount * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Array of " + amount + " ints exceeds 2GB");
+        }
+        return ByteBuffer.allocateDirect(amount * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    @Override
+    int getVertexCount() {
+        return verticesAmount;
+    }
+
+    @Override
+    int getEdgeCount() {
+        return edgeTargets.limit();
+    }
+
+    @Override
+    int getEdgesBegin(int vertex) {
+        return edgeOffsets.get(vertex);
+    }
+
+    @Override
+    int getEdgesEnd(int vertex) {
+        return edgeOffsets.get(vertex + 1);
+    }
+
+    @Override
+    int getEdgeTarget(int edge) {
+        return edgeTargets.get(edge);
+    }
+
+    @Override
+    int getEdgeWeight(int edge) {
+        return edgeWeights.get(edge);
+    }
+
+    @Override
+    boolean hasReverseEdges() {
+        return reverseEdgeOffsets != null;
+    }
+
+    @Override
+    int getReverseEdgesBegin(int vertex) {
+        return reverseEdgeOffsets.get(vertex);
+    }
+
+    @Override
+    int getReverseEdgesEnd(int vertex) {
+        return reverseEdgeOffsets.get(vertex + 1);
+    }
+
+    @Override
+    int getReverseEdgeSource(int reverseEdge) {
+        return reverseEdgeSources.get(reverseEdge);
+    }
+
+    @Override
+    int getReverseEdgeWeight(int reverseEdge) {
+        return reverseEdgeWeights.get(reverseEdge);
+    }
+
+    @Override
+    String getVertexName(int vertex) {
+        int entry = vertex & (NAME_CACHE_SIZE - 1);
+        CachedName cachedName = nameCache[entry];
+        if (cachedName != null && cachedName.vertex == vertex) {
+            return cachedName.name;
+        }
+        int begin = nameOffsets.get(vertex);
+        byte[] bytes = new byte[nameOffsets.get(vertex + 1) - begin];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = nameBytes.get(begin + i);
+        }
+        String name = new String(bytes, StandardCharsets.UTF_8);
+        nameCache[entry] = new CachedName(vertex, name);
+        return name;
+    }
+
+    @Override
+    int findVertexByStringId(String targetId) {
+        byte[] target = targetId.getBytes(StandardCharsets.UTF_8);
+        int slot = StationIndex.firstSlotFor(targetId.hashCode(), slotMask);
+        int vertex;
+        while ((vertex = slots.get(slot)) != NO_VERTEX) {
+            if (nameEquals(vertex, target)) {
+                return vertex;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return NO_VERTEX;
+    }
+
+    private boolean nameEquals(int vertex, byte[] name) {
+        int begin = nameOffsets.get(vertex);
+        if (nameOffsets.get(vertex + 1) - begin != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (nameBytes.get(begin + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class CachedName {
+        private final int vertex;
+        private final String name;
+
+        private CachedName(int vertex, String name) {
+            this.vertex = vertex;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+
+/**
+ * Package-local immutable contraction hierarchy of a {@link Graph}: every vertex has a rank (the order it was
+ * contracted in), and the graph is extended with shortcuts, so that between any two vertices there is a shortest path
+ * which first goes up in rank and then down. A path query is then a pair of small searches: the forward one over
+ * upward edges from the start and the backward one over downward edges (reversed) from the destination.
+ * <p>
+ * Upward edges {@code v -> w} (rank of w is higher) are kept in CSR form by v, downward edges {@code u -> v}
+ * (rank of u is higher) by v, so both searches scan consecutive edges of a vertex.
+ * There is at most one edge between two vertices in a direction, the shortest one.
+ * <p>
+ * A shortcut {@code u -> w} replaces the path {@code u -> m -> w} through its middle vertex m, which has lower rank
+ * than both ends, so edges {@code u -> m} and {@code m -> w} are downward one of m and upward one of m respectively.
+ * That's how {@link #unpack(int, int, IntConsumer)} finds them.
+ *
+ * @author Roman Katerinenko
+ * @see ContractionHierarchyBuilder
+ */
+final class ContractionHierarchy {
+    private final int[] ranks;
+    private final int[] upwardOffsets;
+    private final int[] upwardTargets;
+    private final int[] upwardWeights;
+    // middle vertex of a shortcut or NO_VERTEX for an edge of the graph
+    private final int[] upwardMiddles;
+    private final int[] downwardOffsets;
+    private final int[] downwardSources;
+    private final int[] downwardWeights;
+    private final int[] downwardMiddles;
+
+    ContractionHierarchy(int[] ranks,
+                         int[] upwardOffsets, int[] upwardTargets, int[] upwardWeights, int[] upwardMiddles,
+                         int[] downwardOffsets, int[] downwardSources, int[] downwardWeights, int[] downwardMiddles) {
+        this.ranks = ranks;
+        this.upwardOffsets = upwardOffsets;
+        this.upwardTargets = upwardTargets;
+        this.upwardWeights = upwardWeights;
+        this.upwardMiddles = upwardMiddles;
+        this.downwardOffsets = downwardOffsets;
+        this.downwardSources = downwardSources;
+        this.downwardWeights = downwardWeights;
+        this.downwardMiddles = downwardMiddles;
+    }
+
+    int getVertexCount() {
+        return ranks.length;
+    }
+
+    /**
+     * @return amount of upward and downward edges, i.e. edges of the graph plus shortcuts
+     */
+    int getEdgeCount() {
+        return upwardTargets.length + downwardSources.length;
+    }
+
+    int getUpwardEdgesBegin(int vertex) {
+        return upwardOffsets[vertex];
+    }
+
+    int getUpwardEdgesEnd(int vertex) {
+        return upwardOffsets[vertex + 1];
+    }
+
+    int getUpwardEdgeTarget(int edge) {
+        return upwardTargets[edge];
+    }
+
+    int getUpwardEdgeWeight(int edge) {
+        return upwardWeights[edge];
+    }
+
+    int getDownwardEdgesBegin(int vertex) {
+        return downwardOffsets[vertex];
+    }
+
+    int getDownwardEdgesEnd(int vertex) {
+        return downwardOffsets[vertex + 1];
+    }
+
+    int getDownwardEdgeSource(int edge) {
+        return downwardSources[edge];
+    }
+
+    int getDownwardEdgeWeight(int edge) {
+        return downwardWeights[edge];
+    }
+
+    /**
+     * Replaces the edge of the hierarchy with the path of the graph it stands for.
+     *
+     * @param consumer gets vertices of the path in order, except fromVertex
+     */
+    void unpack(int fromVertex, int toVertex, IntConsumer consumer) {
+        // pending edges, the top one is the next along the path
+        int[] stack = new int[16];
+        stack[0] = fromVertex;
+        stack[1] = toVertex;
+        int size = 2;
+        while (size > 0) {
+            int to = stack[--size];
+            int from = stack[--size];
+            int middle = findMiddle(from, to);
+            if (middle == NO_VERTEX) {
+                consumer.accept(to);
+            } else {
+                if (size + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[size++] = middle;
+                stack[size++] = to;
+                stack[size++] = from;
+                stack[size++] = middle;
+            }
+        }
+    }
+
+    private int findMiddle(int fromVertex, int toVertex) {
+        if (ranks[fromVertex] < ranks[toVertex]) {
+            for (int edge = upwardOffsets[fromVertex]; edge < upwardOffsets[fromVertex + 1]; edge++) {
+                if (upwardTargets[edge] == toVertex) {
+                    return upwardMiddles[edge];
+                }
+            }
+        } else {
+            for (int edge = downwardOffsets[toVertex]; edge < downwardOffsets[toVertex + 1]; edge++) {
+                if (downwardSources[edge] == fromVertex) {
+                    return downwardMiddles[edge];
+                }
+            }
+        }
+        throw new IllegalStateException("No edge " + fromVertex + " -> " + toVertex + " in the hierarchy");
+    }
+}
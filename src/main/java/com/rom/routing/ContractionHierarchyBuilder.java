@@ -0,0 +1,294 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+
+/**
+ * Builds {@link ContractionHierarchy} out of {@link Graph}.
+ * <p>
+ * Vertices are contracted one by one in order of their priority, which is the edge difference (shortcuts added
+ * minus edges removed) plus the amount of already contracted neighbours, so unimportant vertices go first and
+ * contraction is spread evenly over the graph. Priorities are updated lazily: a vertex taken from the queue
+ * is contracted only if its recalculated priority is still the smallest one. The amount of shortcuts is recalculated
+ * only if the priority with the amount found last time is still the smallest one, since it takes witness searches.
+ * <p>
+ * Contraction of v adds a shortcut {@code u -> w} for its neighbours unless a witness search from u, which avoids v,
+ * finds a path to w not longer than {@code u -> v -> w}. Witness searches are limited by the amount of settled
+ * vertices, which may add needless shortcuts, but never makes the hierarchy wrong.
+ *
+ * @author Roman Katerinenko
+ */
+class ContractionHierarchyBuilder {
+    private static final int WITNESS_SEARCH_SETTLED_LIMIT = 50;
+
+    private final Graph graph;
+    private final int verticesAmount;
+    // the graph being contracted: edges between vertices left and shortcuts added so far
+    private final EdgeList[] outgoingEdges;
+    private final EdgeList[] incomingEdges;
+    // edges of contracted vertices, which are edges of the hierarchy
+    private final EdgeList[] upwardEdges;
+    private final EdgeList[] downwardEdges;
+    private final int[] contractedNeighbours;
+    private final int[] shortcutsAmounts;
+    // shortcuts of the vertex the priority was calculated for last: sources here, the rest in the list
+    private final EdgeList shortcuts = new EdgeList();
+    private int[] shortcutSources = new int[16];
+    private final SearchWorkspace witnessWorkspace;
+    private final IndexedMinHeap witnessQueue;
+    // targets of witness searches are marked with the current mark, so a search stops once all of them are settled
+    private final int[] targetMarks;
+    private int currentMark;
+
+    ContractionHierarchyBuilder(Graph graph) {
+        this.graph = graph;
+        this.verticesAmount = graph.getVertexCount();
+        this.outgoingEdges = new EdgeList[verticesAmount];
+        this.incomingEdges = new EdgeList[verticesAmount];
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            outgoingEdges[vertex] = new EdgeList();
+            incomingEdges[vertex] = new EdgeList();
+        }
+        this.upwardEdges = new EdgeList[verticesAmount];
+        this.downwardEdges = new EdgeList[verticesAmount];
+        this.contractedNeighbours = new int[verticesAmount];
+        this.shortcutsAmounts = new int[verticesAmount];
+        this.witnessWorkspace = new SearchWorkspace(verticesAmount);
+        this.witnessQueue = new IndexedMinHeap(verticesAmount, IndexedMinHeap.DEFAULT_ARITY);
+        this.targetMarks = new int[verticesAmount];
+    }
+
+    ContractionHierarchy build() {
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            for (int edge = graph.getEdgesBegin(vertex); edge < graph.getEdgesEnd(vertex); edge++) {
+                int target = graph.getEdgeTarget(edge);
+                if (target != vertex) {
+                    addEdge(vertex, target, graph.getEdgeWeight(edge), NO_VERTEX);
+                }
+            }
+        }
+        IndexedMinHeap contractionQueue = new IndexedMinHeap(verticesAmount, IndexedMinHeap.DEFAULT_ARITY);
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            contractionQueue.insertOrDecrease(vertex, priorityOf(vertex));
+        }
+        int[] ranks = new int[verticesAmount];
+        int rank = 0;
+        while (!contractionQueue.isEmpty()) {
+            int vertex = contractionQueue.poll();
+            // neighbours contracted since the last calculation change the priority, which is cheap to check first
+            int priority = cachedPriorityOf(vertex);
+            if (!contractionQueue.isEmpty() && priority > contractionQueue.getMinKey()) {
+                contractionQueue.insertOrDecrease(vertex, priority);
+                continue;
+            }
+            priority = priorityOf(vertex);
+            if (!contractionQueue.isEmpty() && priority > contractionQueue.getMinKey()) {
+                contractionQueue.insertOrDecrease(vertex, priority);
+                continue;
+            }
+            // shortcuts found by the priority calculation above are the ones the contraction needs
+            for (int i = 0; i < shortcuts.size; i++) {
+                addEdge(shortcutSources[i], shortcuts.vertices[i], shortcuts.weights[i], vertex);
+            }
+            ranks[vertex] = rank++;
+            removeVertex(vertex);
+        }
+        return createHierarchy(ranks);
+    }
+
+    private int priorityOf(int vertex) {
+        findShortcuts(vertex);
+        shortcutsAmounts[vertex] = shortcuts.size;
+        return cachedPriorityOf(vertex);
+    }
+
+    /**
+     * @return priority with the amount of shortcuts found by the last {@link #priorityOf(int)} of the vertex
+     */
+    private int cachedPriorityOf(int vertex) {
+        int removedEdges = outgoingEdges[vertex].size + incomingEdges[vertex].size;
+        return shortcutsAmounts[vertex] - removedEdges + contractedNeighbours[vertex];
+    }
+
+    /**
+     * Finds shortcuts the contraction of the vertex needs and keeps them in {@link #shortcuts}.
+     */
+    private void findShortcuts(int vertex) {
+        shortcuts.size = 0;
+        EdgeList incoming = incomingEdges[vertex];
+        EdgeList outgoing = outgoingEdges[vertex];
+        currentMark++;
+        for (int j = 0; j < outgoing.size; j++) {
+            targetMarks[outgoing.vertices[j]] = currentMark;
+        }
+        for (int i = 0; i < incoming.size; i++) {
+            int source = incoming.vertices[i];
+            long incomingWeight = incoming.weights[i];
+            int maxOutgoingWeight = -1;
+            for (int j = 0; j < outgoing.size; j++) {
+                if (outgoing.vertices[j] != source) {
+                    maxOutgoingWeight = Math.max(maxOutgoingWeight, outgoing.weights[j]);
+                }
+            }
+            if (maxOutgoingWeight < 0) {
+                continue;
+            }
+            int targetsAmount = targetMarks[source] == currentMark ? outgoing.size - 1 : outgoing.size;
+            runWitnessSearch(source, vertex, incomingWeight + maxOutgoingWeight, targetsAmount);
+            for (int j = 0; j < outgoing.size; j++) {
+                int target = outgoing.vertices[j];
+                long shortcutWeight = incomingWeight + outgoing.weights[j];
+                if (target != source && witnessWorkspace.getEstimatedTime(target) > shortcutWeight) {
+                    if (shortcuts.size == shortcutSources.length) {
+                        shortcutSources = Arrays.copyOf(shortcutSources, shortcutSources.length * 2);
+                    }
+                    shortcutSources[shortcuts.size] = source;
+                    shortcuts.add(target, (int) Math.min(shortcutWeight, Integer.MAX_VALUE), vertex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dijkstra search from the source over vertices left, except the one being contracted.
+     * It stops when all marked targets are settled.
+     */
+    private void runWitnessSearch(int source, int excludedVertex, long maxTravelTime, int targetsAmount) {
+        witnessWorkspace.reset();
+        witnessWorkspace.update(source, 0, NO_VERTEX);
+        witnessQueue.clear();
+        witnessQueue.insertOrDecrease(source, 0);
+        int settledAmount = 0;
+        int targetsLeft = targetsAmount;
+        while (!witnessQueue.isEmpty() && targetsLeft > 0 && settledAmount++ < WITNESS_SEARCH_SETTLED_LIMIT) {
+            int vertex = witnessQueue.poll();
+            if (targetMarks[vertex] == currentMark && vertex != source) {
+                targetsLeft--;
+            }
+            int estimatedTime = witnessWorkspace.getEstimatedTime(vertex);
+            EdgeList outgoing = outgoingEdges[vertex];
+            for (int i = 0; i < outgoing.size; i++) {
+                int target = outgoing.vertices[i];
+                long newEstimation = (long) estimatedTime + outgoing.weights[i];
+                if (target != excludedVertex && newEstimation <= maxTravelTime
+                        && witnessWorkspace.getEstimatedTime(target) > newEstimation) {
+                    witnessWorkspace.update(target, (int) newEstimation, vertex);
+                    witnessQueue.insertOrDecrease(target, (int) newEstimation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the edge or makes the existing edge between the vertices shorter.
+     */
+    private void addEdge(int source, int target, int weight, int middle) {
+        EdgeList outgoing = outgoingEdges[source];
+        int i = outgoing.indexOf(target);
+        if (i < 0) {
+            outgoing.add(target, weight, middle);
+            incomingEdges[target].add(source, weight, middle);
+        } else if (weight < outgoing.weights[i]) {
+            outgoing.set(i, weight, middle);
+            EdgeList incoming = incomingEdges[target];
+            incoming.set(incoming.indexOf(source), weight, middle);
+        }
+    }
+
+    /**
+     * Edges of the contracted vertex become edges of the hierarchy: outgoing ones are upward, incoming ones
+     * are downward, since all vertices left have higher rank. They are removed from the graph being contracted.
+     */
+    private void removeVertex(int vertex) {
+        EdgeList outgoing = outgoingEdges[vertex];
+        EdgeList incoming = incomingEdges[vertex];
+        for (int i = 0; i < outgoing.size; i++) {
+            int target = outgoing.vertices[i];
+            incomingEdges[target].remove(vertex);
+            contractedNeighbours[target]++;
+        }
+        for (int i = 0; i < incoming.size; i++) {
+            int source = incoming.vertices[i];
+            outgoingEdges[source].remove(vertex);
+            contractedNeighbours[source]++;
+        }
+        upwardEdges[vertex] = outgoing;
+        downwardEdges[vertex] = incoming;
+        outgoingEdges[vertex] = null;
+        incomingEdges[vertex] = null;
+    }
+
+    private ContractionHierarchy createHierarchy(int[] ranks) {
+        int[] upwardOffsets = new int[verticesAmount + 1];
+        int[] downwardOffsets = new int[verticesAmount + 1];
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            upwardOffsets[vertex + 1] = upwardOffsets[vertex] + upwardEdges[vertex].size;
+            downwardOffsets[vertex + 1] = downwardOffsets[vertex] + downwardEdges[vertex].size;
+        }
+        int upwardAmount = upwardOffsets[verticesAmount];
+        int downwardAmount = downwardOffsets[verticesAmount];
+        int[] upwardTargets = new int[upwardAmount];
+        int[] upwardWeights = new int[upwardAmount];
+        int[] upwardMiddles = new int[upwardAmount];
+        int[] downwardSources = new int[downwardAmount];
+        int[] downwardWeights = new int[downwardAmount];
+        int[] downwardMiddles = new int[downwardAmount];
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            upwardEdges[vertex].copyTo(upwardTargets, upwardWeights, upwardMiddles, upwardOffsets[vertex]);
+            downwardEdges[vertex].copyTo(downwardSources, downwardWeights, downwardMiddles, downwardOffsets[vertex]);
+        }
+        return new ContractionHierarchy(ranks, upwardOffsets, upwardTargets, upwardWeights, upwardMiddles,
+                downwardOffsets, downwardSources, downwardWeights, downwardMiddles);
+    }
+
+    /**
+     * Growable list of edges of a vertex: adjacent vertex, weight and middle vertex of a shortcut.
+     */
+    private static final class EdgeList {
+        private int[] vertices = new int[4];
+        private int[] weights = new int[4];
+        private int[] middles = new int[4];
+        private int size;
+
+        int indexOf(int vertex) {
+            for (int i = 0; i < size; i++) {
+                if (vertices[i] == vertex) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        void add(int vertex, int weight, int middle) {
+            if (size == vertices.length) {
+                vertices = Arrays.copyOf(vertices, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+                middles = Arrays.copyOf(middles, size * 2);
+            }
+            vertices[size] = vertex;
+            weights[size] = weight;
+            middles[size] = middle;
+            size++;
+        }
+
+        void set(int index, int weight, int middle) {
+            weights[index] = weight;
+            middles[index] = middle;
+        }
+
+        void remove(int vertex) {
+            int index = indexOf(vertex);
+            size--;
+            vertices[index] = vertices[size];
+            weights[index] = weights[size];
+            middles[index] = middles[size];
+        }
+
+        void copyTo(int[] vertices, int[] weights, int[] middles, int offset) {
+            System.arraycopy(this.vertices, 0, vertices, offset, size);
+            System.arraycopy(this.weights, 0, weights, offset, size);
+            System.arraycopy(this.middles, 0, middles, offset, size);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.rom.routing;
+
+import com.rom.routing.core.EmptyRouteSolution;
+import com.rom.routing.core.MatrixQuery;
+import com.rom.routing.core.MatrixSolution;
+import com.rom.routing.core.PathQuery;
+import com.rom.routing.core.PathSolution;
+import com.rom.routing.core.Solution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+
+/**
+ * Answers {@link PathQuery} with a {@link ContractionHierarchy}: a forward search over upward edges from the start
+ * and a backward search over downward edges from the destination, each one stops when its smallest key isn't less
+ * than the best route found so far. Both searches only go up in rank, so they settle a small part of the graph.
+ * The route is then unpacked from shortcuts into stations of the graph.
+ * The searches reuse the forward and backward queues and workspaces of {@link DijkstraQuerySolver}.
+ * <p>
+ * {@link MatrixQuery} is answered by buckets: a backward search from every target leaves its travel time to
+ * the target in a bucket of every vertex it settles, then a forward search from every source combines its times
+ * with the buckets of the vertices it settles. So a matrix takes a search per station of both sets.
+ * <p>
+ * Other queries, as well as path queries between the same station or unknown stations, are answered
+ * by {@link DijkstraQuerySolver}.
+ * <p>
+ * Note! If several routes have the same travel time, the route found may differ from the one Dijkstra finds.
+ *
+ * @author Roman Katerinenko
+ * @see ContractionHierarchyBuilder
+ */
+class ContractionHierarchyQuerySolver extends DijkstraQuerySolver {
+    private static final int MAX_PATH_COST = SearchWorkspace.UNREACHED;
+    private static final int NO_ENTRY = -1;
+
+    private final ContractionHierarchy hierarchy;
+    // buckets of a matrix query: the first entry of a vertex and, for every entry, its vertex, the next entry of
+    // the vertex, its target and the travel time to the target; allocated by the first matrix query
+    private int[] bucketHeads;
+    private int[] entryVertices;
+    private int[] entryNext;
+    private int[] entryTargets;
+    private int[] entryTimes;
+    private int[] settledOrder;
+
+    /**
+     * @param hierarchy hierarchy of the graph, which may be shared with other solvers of the same graph
+     */
+    ContractionHierarchyQuerySolver(Graph graph, ContractionHierarchy hierarchy, RoutingOptions options,
+                                    ShortestPathTreeCache treeCache) {
+        super(graph, options, treeCache, true);
+        this.hierarchy = hierarchy;
+    }
+
+    @Override
+    Solution solvePath(PathQuery pathQuery) {
+        Graph graph = getGraph();
+        int fromVertex = graph.findVertexByStringId(pathQuery.getFromStation());
+        int toVertex = graph.findVertexByStringId(pathQuery.getToStation());
+        if (fromVertex == NO_VERTEX || toVertex == NO_VERTEX || fromVertex == toVertex) {
+            return super.solvePath(pathQuery);
+        }
+        Solution solution = findPath(fromVertex, toVertex);
+        return solution != null ? solution : new EmptyRouteSolution(pathQuery);
+    }
+
+    @Override
+    Solution solveMatrix(MatrixQuery matrixQuery) {
+        MatrixSolution solution = new MatrixSolution(matrixQuery);
+        int[] fromVertices = findVertices(matrixQuery.getFromStations());
+        int[] toVertices = findVertices(matrixQuery.getToStations());
+        SearchWorkspace forwardWorkspace = getWorkspace();
+        SearchWorkspace backwardWorkspace = getBackwardWorkspace();
+        if (bucketHeads == null) {
+            Graph graph = getGraph();
+            bucketHeads = new int[graph.getVertexCount()];
+            Arrays.fill(bucketHeads, NO_ENTRY);
+            entryVertices = new int[16];
+            entryNext = new int[16];
+            entryTargets = new int[16];
+            entryTimes = new int[16];
+            settledOrder = new int[graph.getVertexCount()];
+        }
+        int entriesAmount = 0;
+        for (int to = 0; to < toVertices.length; to++) {
+            if (toVertices[to] == NO_VERTEX) {
+                continue;
+            }
+            int settledAmount = searchUpwards(toVertices[to], false);
+            for (int i = 0; i < settledAmount; i++) {
+                int vertex = settledOrder[i];
+                if (entriesAmount == entryNext.length) {
+                    entryVertices = Arrays.copyOf(entryVertices, 2 * entriesAmount);
+                    entryNext = Arrays.copyOf(entryNext, 2 * entriesAmount);
+                    entryTargets = Arrays.copyOf(entryTargets, 2 * entriesAmount);
+                    entryTimes = Arrays.copyOf(entryTimes, 2 * entriesAmount);
+                }
+                entryVertices[entriesAmount] = vertex;
+                entryNext[entriesAmount] = bucketHeads[vertex];
+                entryTargets[entriesAmount] = to;
+                entryTimes[entriesAmount] = backwardWorkspace.getEstimatedTime(vertex);
+                bucketHeads[vertex] = entriesAmount++;
+            }
+        }
+        for (int from = 0; from < fromVertices.length; from++) {
+            if (fromVertices[from] == NO_VERTEX) {
+                continue;
+            }
+            int settledAmount = searchUpwards(fromVertices[from], true);
+            for (int i = 0; i < settledAmount; i++) {
+                int vertex = settledOrder[i];
+                int travelTime = forwardWorkspace.getEstimatedTime(vertex);
+                for (int entry = bucketHeads[vertex]; entry != NO_ENTRY; entry = entryNext[entry]) {
+                    long routeTime = (long) travelTime + entryTimes[entry];
+                    int to = entryTargets[entry];
+                    int bestTime = solution.getTravelTime(from, to);
+                    if (routeTime < MAX_PATH_COST && (bestTime == MatrixSolution.NO_ROUTE || routeTime < bestTime)) {
+                        solution.setTravelTime(from, to, (int) routeTime);
+                    }
+                }
+            }
+        }
+        for (int entry = 0; entry < entriesAmount; entry++) {
+            bucketHeads[entryVertices[entry]] = NO_ENTRY;
+        }
+        return solution;
+    }
+
+    /**
+     * Complete search from the vertex over upward edges, forward one, or over downward edges, backward one.
+     * Travel times are left in the workspace of the direction.
+     *
+     * @return amount of settled vertices, which are put into {@link #settledOrder}
+     */
+    private int searchUpwards(int startVertex, boolean forward) {
+        SearchWorkspace workspace = forward ? getWorkspace() : getBackwardWorkspace();
+        VertexQueue queue = forward ? getQueue() : getBackwardQueue();
+        workspace.reset();
+        workspace.update(startVertex, 0, NO_VERTEX);
+        queue.clear();
+        queue.insertOrDecrease(startVertex, 0);
+        heapOperations++;
+        int settledAmount = 0;
+        while (!queue.isEmpty()) {
+            int vertex = queue.poll();
+            settledOrder[settledAmount++] = vertex;
+            int estimatedTime = workspace.getEstimatedTime(vertex);
+            int edgesBegin = forward ? hierarchy.getUpwardEdgesBegin(vertex) : hierarchy.getDownwardEdgesBegin(vertex);
+            int edgesEnd = forward ? hierarchy.getUpwardEdgesEnd(vertex) : hierarchy.getDownwardEdgesEnd(vertex);
+            settledVertices++;
+            relaxedEdges += edgesEnd - edgesBegin;
+            heapOperations++;
+            for (int edge = edgesBegin; edge < edgesEnd; edge++) {
+                int adjacentVertex = forward ? hierarchy.getUpwardEdgeTarget(edge) : hierarchy.getDownwardEdgeSource(edge);
+                int weight = forward ? hierarchy.getUpwardEdgeWeight(edge) : hierarchy.getDownwardEdgeWeight(edge);
+                long newEstimation = (long) weight + estimatedTime;
+                if (workspace.getEstimatedTime(adjacentVertex) > newEstimation) {
+                    workspace.update(adjacentVertex, (int) newEstimation, vertex);
+                    queue.insertOrDecrease(adjacentVertex, (int) newEstimation);
+                    heapOperations++;
+                }
+            }
+        }
+        return settledAmount;
+    }
+
+    /**
+     * @return null if there is no route
+     */
+    private Solution findPath(int fromVertex, int toVertex) {
+        VertexQueue forwardQueue = getQueue();
+        VertexQueue backwardQueue = getBackwardQueue();
+        SearchWorkspace forwardWorkspace = getWorkspace();
+        SearchWorkspace backwardWorkspace = getBackwardWorkspace();
+        forwardWorkspace.reset();
+        forwardWorkspace.update(fromVertex, 0, NO_VERTEX);
+        forwardQueue.clear();
+        forwardQueue.insertOrDecrease(fromVertex, 0);
+        backwardWorkspace.reset();
+        backwardWorkspace.update(toVertex, 0, NO_VERTEX);
+        backwardQueue.clear();
+        backwardQueue.insertOrDecrease(toVertex, 0);
+        heapOperations += 2;
+        long bestRouteTime = MAX_PATH_COST;
+        int meetingVertex = NO_VERTEX;
+        while (true) {
+            boolean forward = !forwardQueue.isEmpty() && forwardQueue.getMinKey() < bestRouteTime;
+            boolean backward = !backwardQueue.isEmpty() && backwardQueue.getMinKey() < bestRouteTime;
+            if (!forward && !backward) {
+                break;
+            }
+            settledVertices++;
+            heapOperations++;
+            if (forward && (!backward || forwardQueue.getMinKey() <= backwardQueue.getMinKey())) {
+                int vertex = forwardQueue.poll();
+                int estimatedTime = forwardWorkspace.getEstimatedTime(vertex);
+                long routeTime = (long) estimatedTime + backwardWorkspace.getEstimatedTime(vertex);
+                if (routeTime < bestRouteTime) {
+                    bestRouteTime = routeTime;
+                    meetingVertex = vertex;
+                }
+                relaxedEdges += hierarchy.getUpwardEdgesEnd(vertex) - hierarchy.getUpwardEdgesBegin(vertex);
+                for (int edge = hierarchy.getUpwardEdgesBegin(vertex); edge < hierarchy.getUpwardEdgesEnd(vertex); edge++) {
+                    int adjacentVertex = hierarchy.getUpwardEdgeTarget(edge);
+                    long newEstimation = (long) hierarchy.getUpwardEdgeWeight(edge) + estimatedTime;
+                    if (forwardWorkspace.getEstimatedTime(adjacentVertex) > newEstimation) {
+                        forwardWorkspace.update(adjacentVertex, (int) newEstimation, vertex);
+                        forwardQueue.insertOrDecrease(adjacentVertex, (int) newEstimation);
+                        heapOperations++;
+                    }
+                }
+            } else {
+                int vertex = backwardQueue.poll();
+                int estimatedTime = backwardWorkspace.getEstimatedTime(vertex);
+                long routeTime = (long) estimatedTime + forwardWorkspace.getEstimatedTime(vertex);
+                if (routeTime < bestRouteTime) {
+                    bestRouteTime = routeTime;
+                    meetingVertex = vertex;
+                }
+                relaxedEdges += hierarchy.getDownwardEdgesEnd(vertex) - hierarchy.getDownwardEdgesBegin(vertex);
+                for (int edge = hierarchy.getDownwardEdgesBegin(vertex); edge < hierarchy.getDownwardEdgesEnd(vertex); edge++) {
+                    int adjacentVertex = hierarchy.getDownwardEdgeSource(edge);
+                    long newEstimation = (long) hierarchy.getDownwardEdgeWeight(edge) + estimatedTime;
+                    if (backwardWorkspace.getEstimatedTime(adjacentVertex) > newEstimation) {
+                        backwardWorkspace.update(adjacentVertex, (int) newEstimation, vertex);
+                        backwardQueue.insertOrDecrease(adjacentVertex, (int) newEstimation);
+                        heapOperations++;
+                    }
+                }
+            }
+        }
+        if (meetingVertex == NO_VERTEX) {
+            return null;
+        }
+        return new PathSolution((int) bestRouteTime, unpackRoute(fromVertex, meetingVertex));
+    }
+
+    private List<String> unpackRoute(int fromVertex, int meetingVertex) {
+        Graph graph = getGraph();
+        SearchWorkspace forwardWorkspace = getWorkspace();
+        SearchWorkspace backwardWorkspace = getBackwardWorkspace();
+        // vertices of the upward part are collected from the meeting vertex back to the start
+        List<Integer> upwardPart = new ArrayList<>();
+        for (int v = meetingVertex; v != NO_VERTEX; v = forwardWorkspace.getPredecessor(v)) {
+            upwardPart.add(v);
+        }
+        List<String> route = new ArrayList<>();
+        route.add(graph.getVertexName(fromVertex));
+        for (int i = upwardPart.size() - 1; i > 0; i--) {
+            hierarchy.unpack(upwardPart.get(i), upwardPart.get(i - 1), v -> route.add(graph.getVertexName(v)));
+        }
+        for (int v = meetingVertex, next; (next = backwardWorkspace.getPredecessor(v)) != NO_VERTEX; v = next) {
+            hierarchy.unpack(v, next, u -> route.add(graph.getVertexName(u)));
+        }
+        return route;
+    }
+}
@@ -0,0 +1,316 @@
+package com.rom.routing;
+
+import com.rom.routing.core.EmptyNearbySolution;
+import com.rom.routing.core.NearbyQuery;
+import com.rom.routing.core.NearbySolution;
+import com.rom.routing.core.Solution;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+import static com.rom.routing.SearchWorkspace.UNREACHED;
+
+/**
+ * Answers {@link NearbyQuery} with delta-stepping, which settles vertices by buckets of travel times of width delta
+ * rather than one by one, so edges of all vertices of a bucket are relaxed at once by threads of a pool.
+ * A bucket is done in phases: light edges (not longer than delta) of the vertices of the bucket are relaxed
+ * until no vertex gets into the bucket any more, then heavy edges of all its vertices are relaxed once.
+ * Travel times are lowered by compare-and-set, so threads don't lock anything, and vertices whose times
+ * are lowered go to their buckets in the calling thread between phases. Queued times lie within the max edge weight
+ * of the current bucket, so buckets are a circular array of max edge weight / delta + 2 lists.
+ * <p>
+ * Stations of a nearby solution are ordered by travel time and name, so the solution is exactly the one
+ * {@link DijkstraQuerySolver} gives. Path queries are answered by {@link DijkstraQuerySolver}, since a route among
+ * several of the same travel time would depend on the order threads relax edges in.
+ * <p>
+ * Note! Phases of small buckets are relaxed by the calling thread, so a nearby query of a few stations doesn't pay
+ * for the pool. Search state is allocated once per solver and reset in time proportional to the vertices reached.
+ *
+ * @author Roman Katerinenko
+ * @see RoutingOptions#isDeltaStepping()
+ */
+class DeltaSteppingQuerySolver extends DijkstraQuerySolver {
+    // phases of fewer vertices are relaxed by the calling thread
+    private static final int MIN_PARALLEL_VERTICES = 1024;
+    // each thread gets about this amount of chunks of a phase, which evens out vertices of different degrees
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int NOT_QUEUED = -1;
+
+    private final ForkJoinPool pool;
+    private final int delta;
+    private final AtomicIntegerArray estimatedTimes;
+    // bucket a vertex is queued in or NOT_QUEUED, a vertex may also stay in buckets of its former times
+    private final int[] queuedBuckets;
+    // bucket the vertex has been settled in plus 1, 0 if it isn't settled yet
+    private final int[] settledBuckets;
+    // bucket b is the list b modulo the amount of lists
+    private final IntList[] buckets;
+    private final IntList frontier = new IntList();
+    private final IntList settled = new IntList();
+    private final IntList reached = new IntList();
+    private final Relaxation[] relaxations;
+    private int queuedAmount;
+
+    /**
+     * @param pool threads relaxing edges or null to relax them in the calling thread
+     */
+    DeltaSteppingQuerySolver(Graph graph, RoutingOptions options, ShortestPathTreeCache treeCache,
+                             ForkJoinPool pool) {
+        super(graph, options, treeCache);
+        this.pool = pool;
+        int maxEdgeWeight = findMaxEdgeWeight(graph);
+        this.delta = chooseDelta(graph, maxEdgeWeight);
+        this.buckets = new IntList[maxEdgeWeight / delta + 2];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new IntList();
+        }
+        int verticesAmount = graph.getVertexCount();
+        this.estimatedTimes = new AtomicIntegerArray(verticesAmount);
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            estimatedTimes.set(vertex, UNREACHED);
+        }
+        this.queuedBuckets = new int[verticesAmount];
+        Arrays.fill(queuedBuckets, NOT_QUEUED);
+        this.settledBuckets = new int[verticesAmount];
+        int chunksAmount = pool == null ? 1 : pool.getParallelism() * CHUNKS_PER_THREAD;
+        this.relaxations = new Relaxation[chunksAmount];
+        for (int i = 0; i < chunksAmount; i++) {
+            relaxations[i] = new Relaxation();
+        }
+    }
+
+    /**
+     * @return max edge weight divided by the average degree, so a bucket takes about one hop of a search
+     */
+    private static int chooseDelta(Graph graph, int maxEdgeWeight) {
+        int averageDegree = Math.max(1, graph.getEdgeCount() / Math.max(1, graph.getVertexCount()));
+        return Math.max(1, maxEdgeWeight / averageDegree);
+    }
+
+    @Override
+    Solution solveNearby(NearbyQuery nearbyQuery) {
+        int startVertex = getGraph().findVertexByStringId(nearbyQuery.getFromStation());
+        if (startVertex == NO_VERTEX) {
+            return new EmptyNearbySolution(nearbyQuery);
+        }
+        try {
+            runDeltaStepping(startVertex, nearbyQuery.getTravelTime());
+            Solution nearbySolution = collectNearbyStations(startVertex);
+            return nearbySolution != null ? nearbySolution : new EmptyNearbySolution(nearbyQuery);
+        } finally {
+            reset();
+        }
+    }
+
+    private void runDeltaStepping(int startVertex, int maxTravelTime) {
+        estimatedTimes.set(startVertex, 0);
+        reached.add(startVertex);
+        enqueue(startVertex, 0);
+        for (int bucket = 0; queuedAmount > 0; bucket++) {
+            IntList bucketVertices = buckets[bucket % buckets.length];
+            settled.clear();
+            while (bucketVertices.size > 0) {
+                frontier.clear();
+                for (int i = 0; i < bucketVertices.size; i++) {
+                    int vertex = bucketVertices.items[i];
+                    queuedBuckets[vertex] = NOT_QUEUED;
+                    // the vertex may have got a shorter time after it was put into the bucket
+                    if (estimatedTimes.get(vertex) / delta == bucket) {
+                        frontier.add(vertex);
+                        if (settledBuckets[vertex] != bucket + 1) {
+                            settledBuckets[vertex] = bucket + 1;
+                            settled.add(vertex);
+                        }
+                    }
+                }
+                heapOperations += bucketVertices.size;
+                queuedAmount -= bucketVertices.size;
+                bucketVertices.clear();
+                relax(frontier, true, maxTravelTime);
+            }
+            settledVertices += settled.size;
+            relax(settled, false, maxTravelTime);
+        }
+    }
+
+    /**
+     * Relaxes light or heavy edges of the vertices, in parallel if there are enough of them,
+     * and puts vertices whose times are lowered to their buckets.
+     */
+    private void relax(IntList vertices, boolean light, int maxTravelTime) {
+        int chunksAmount = pool == null || vertices.size < MIN_PARALLEL_VERTICES ? 1 : relaxations.length;
+        if (chunksAmount == 1) {
+            relaxations[0].relax(vertices, 0, vertices.size, light, maxTravelTime);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<>(chunksAmount);
+            for (int chunk = 0; chunk < chunksAmount; chunk++) {
+                Relaxation relaxation = relaxations[chunk];
+                int begin = (int) ((long) vertices.size * chunk / chunksAmount);
+                int end = (int) ((long) vertices.size * (chunk + 1) / chunksAmount);
+                tasks.add(() -> {
+                    relaxation.relax(vertices, begin, end, light, maxTravelTime);
+                    return null;
+                });
+            }
+            invokeAll(tasks);
+        }
+        for (int chunk = 0; chunk < chunksAmount; chunk++) {
+            Relaxation relaxation = relaxations[chunk];
+            relaxedEdges += relaxation.relaxedEdges;
+            reached.addAll(relaxation.reached);
+            for (int i = 0; i < relaxation.improved.size; i++) {
+                int vertex = relaxation.improved.items[i];
+                enqueue(vertex, estimatedTimes.get(vertex) / delta);
+            }
+            relaxation.clear();
+        }
+    }
+
+    private void enqueue(int vertex, int bucket) {
+        if (queuedBuckets[vertex] == bucket) {
+            return;
+        }
+        queuedBuckets[vertex] = bucket;
+        buckets[bucket % buckets.length].add(vertex);
+        queuedAmount++;
+        heapOperations++;
+    }
+
+    /**
+     * @return reached stations but the start one ordered by travel time and name or null if there are none
+     */
+    private Solution collectNearbyStations(int startVertex) {
+        long[] stations = new long[reached.size];
+        int stationsAmount = 0;
+        for (int i = 0; i < reached.size; i++) {
+            int vertex = reached.items[i];
+            if (vertex != startVertex) {
+                stations[stationsAmount++] = (long) estimatedTimes.get(vertex) << 32 | vertex;
+            }
+        }
+        if (stationsAmount == 0) {
+            return null;
+        }
+        Arrays.sort(stations, 0, stationsAmount);
+        NearbySolution nearbySolution = new NearbySolution();
+        for (int i = 0; i < stationsAmount; i++) {
+            // stations of the same time are ordered by name by the solution
+            nearbySolution.add((int) (stations[i] >>> 32), getGraph().getVertexName((int) stations[i]));
+        }
+        return nearbySolution;
+    }
+
+    private void reset() {
+        for (int i = 0; i < reached.size; i++) {
+            int vertex = reached.items[i];
+            estimatedTimes.set(vertex, UNREACHED);
+            queuedBuckets[vertex] = NOT_QUEUED;
+            settledBuckets[vertex] = 0;
+        }
+        reached.clear();
+        for (IntList bucket : buckets) {
+            bucket.clear();
+        }
+        queuedAmount = 0;
+        for (Relaxation relaxation : relaxations) {
+            relaxation.clear();
+        }
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) {
+        try {
+            for (Future<Void> future : pool.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while relaxing edges", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Relaxation of a chunk of vertices by one thread, it collects vertices it lowered times of.
+     */
+    private final class Relaxation {
+        private final IntList improved = new IntList();
+        // vertices reached for the first time
+        private final IntList reached = new IntList();
+        private long relaxedEdges;
+
+        void relax(IntList vertices, int begin, int end, boolean light, int maxTravelTime) {
+            Graph graph = getGraph();
+            for (int i = begin; i < end; i++) {
+                int vertex = vertices.items[i];
+                long estimatedTime = estimatedTimes.get(vertex);
+                int edgesEnd = graph.getEdgesEnd(vertex);
+                for (int edge = graph.getEdgesBegin(vertex); edge < edgesEnd; edge++) {
+                    int weight = graph.getEdgeWeight(edge);
+                    if ((weight <= delta) != light) {
+                        continue;
+                    }
+                    relaxedEdges++;
+                    long newEstimation = estimatedTime + weight;
+                    if (newEstimation > maxTravelTime) {
+                        continue;
+                    }
+                    int adjacentVertex = graph.getEdgeTarget(edge);
+                    int oldEstimation = estimatedTimes.get(adjacentVertex);
+                    while (newEstimation < oldEstimation) {
+                        if (estimatedTimes.compareAndSet(adjacentVertex, oldEstimation, (int) newEstimation)) {
+                            improved.add(adjacentVertex);
+                            if (oldEstimation == UNREACHED) {
+                                reached.add(adjacentVertex);
+                            }
+                            break;
+                        }
+                        oldEstimation = estimatedTimes.get(adjacentVertex);
+                    }
+                }
+            }
+        }
+
+        void clear() {
+            improved.clear();
+            reached.clear();
+            relaxedEdges = 0;
+        }
+    }
+
+    /**
+     * Growable list of ints, which keeps its capacity when cleared.
+     */
+    private static final class IntList {
+        private int[] items = new int[16];
+        private int size;
+
+        void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, 2 * size);
+            }
+            items[size++] = item;
+        }
+
+        void addAll(IntList list) {
+            for (int i = 0; i < list.size; i++) {
+                add(list.items[i]);
+            }
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+}
@@ -2,201 +2,495 @@ package com.rom.routing;
 
 import com.rom.routing.core.EmptyNearbySolution;
 import com.rom.routing.core.EmptyRouteSolution;
+import com.rom.routing.core.MatrixQuery;
+import com.rom.routing.core.MatrixSolution;
 import com.rom.routing.core.NearbyQuery;
 import com.rom.routing.core.NearbySolution;
-import com.rom.routing.core.QueryVisitor;
 import com.rom.routing.core.PathQuery;
 import com.rom.routing.core.PathSolution;
 import com.rom.routing.core.Solution;
-import com.rom.routing.core.Solutions;
 
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.List;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+import static com.rom.routing.SearchWorkspace.UNREACHED;
 
 /**
  * Implementation of Dijkstra single-source shortest-path algorithm.
- * It uses {@link PriorityQueue} as MIN-HEAP implementation.
+ * It uses {@link IndexedMinHeap} as MIN-HEAP implementation or, optionally ({@link RoutingOptions#isBucketQueue()}),
+ * {@link BucketQueue} of O(1) operations for graphs of small travel times. The queue is seeded only with the start
+ * vertex, other vertices get there when they are reached for the first time, so each query takes O(E*logV) time.
+ * <p>
+ * For {@link PathQuery} the search stops as soon as the destination is settled, so its cost depends on how far
+ * the destination is rather than on the size of the graph. Optionally ({@link RoutingOptions#isBidirectionalSearch()})
+ * path queries are answered by bidirectional Dijkstra, which runs a forward search from the start and a backward
+ * search (over reverse edges) from the destination and stops when they can't find anything shorter than the best
+ * path through a vertex settled by both.
+ * <p>
+ * When a station is the source of several queries, the complete tree of shortest paths from it is built once and
+ * kept in {@link ShortestPathTreeCache}, so later path and nearby queries from that station are answered without
+ * searching (see {@link RoutingOptions#getTreeCacheCapacity()}). Given a {@link DistanceTable}, the solver takes
+ * trees of all stations from it and doesn't search at all.
+ * <p>
+ * {@link MatrixQuery} takes a search per source station, which stops as soon as all target stations are settled.
  * <p>
- * Note! It keeps a metadata for a vertex separately from a vertex.
- * Since the algorithm modifies the metadata while solving a query, separate metadata allows to keep graph unmodified
- * from query to query and avoid the cost of graph copying.
+ * Note! It keeps a metadata for a vertex (estimated time and predecessor) in {@link SearchWorkspace}
+ * separately from a graph. Since the algorithm modifies the metadata while solving a query, separate metadata allows
+ * to keep graph unmodified from query to query and avoid the cost of graph copying. The workspace and the heap are
+ * allocated once per solver and reset between queries in time proportional to the work done by the previous query,
+ * so solving a query doesn't allocate anything but its solution.
  *
  * @author Roman Katerinenko
  */
-class DijkstraQuerySolver implements QueryVisitor {
+class DijkstraQuerySolver extends QuerySolver {
     private static final int SAME_VERTEX_PATH_COST = 0;
     private static final int MIN_PATH_COST = 0;
-    private static final int MAX_PATH_COST = Integer.MAX_VALUE;
+    private static final int MAX_PATH_COST = SearchWorkspace.UNREACHED;
 
-    private final Solutions solutions = new Solutions();
     private final Graph graph;
-
-    private Map<Graph.Vertex, VertexMetadata> vertexMetadata;
-    private PriorityQueue<VertexMetadata> priorityQueue;
+    private final VertexQueue priorityQueue;
+    private final boolean bidirectionalSearch;
+    private final VertexQueue backwardPriorityQueue;
+    private final SearchWorkspace workspace;
+    // metadata of the backward search: estimated time to the destination and the next vertex on the way there
+    private final SearchWorkspace backwardWorkspace;
+    private final ShortestPathTreeCache treeCache;
+    private final DistanceTable distanceTable;
+    // targets of the current matrix query, allocated by the first one
+    private boolean[] matrixTargets;
 
     DijkstraQuerySolver(Graph graph) {
+        this(graph, new RoutingOptions());
+    }
+
+    DijkstraQuerySolver(Graph graph, RoutingOptions options) {
+        this(graph, options, new ShortestPathTreeCache(options.getTreeCacheCapacity()));
+    }
+
+    /**
+     * @param treeCache cache of trees, which may be shared with other solvers of the same graph
+     */
+    DijkstraQuerySolver(Graph graph, RoutingOptions options, ShortestPathTreeCache treeCache) {
+        this(graph, options, treeCache, null, options.isBucketQueue(), false);
+    }
+
+    /**
+     * Constructor of subclasses which run searches of their own over the queues and workspaces of this solver.
+     * Keys of such searches aren't bounded by the longest edge of the graph, so the queues are always heaps,
+     * whatever {@link RoutingOptions#isBucketQueue()} is.
+     *
+     * @param backwardSearch whether a subclass runs backward searches of its own over {@link #getBackwardQueue()}
+     *                       and {@link #getBackwardWorkspace()}, so they are needed whatever the options are
+     */
+    DijkstraQuerySolver(Graph graph, RoutingOptions options, ShortestPathTreeCache treeCache, boolean backwardSearch) {
+        this(graph, options, treeCache, null, false, backwardSearch);
+    }
+
+    /**
+     * @param distanceTable table of the graph, which answers all queries instead of searches and the cache of trees
+     */
+    DijkstraQuerySolver(Graph graph, RoutingOptions options, DistanceTable distanceTable) {
+        this(graph, options, new ShortestPathTreeCache(0), distanceTable, options.isBucketQueue(), false);
+    }
+
+    private DijkstraQuerySolver(Graph graph, RoutingOptions options, ShortestPathTreeCache treeCache,
+                                DistanceTable distanceTable, boolean bucketQueue, boolean backwardSearch) {
         this.graph = graph;
+        this.treeCache = treeCache;
+        this.distanceTable = distanceTable;
+        int maxEdgeWeight = bucketQueue ? findMaxEdgeWeight(graph) : Integer.MAX_VALUE;
+        this.priorityQueue = newQueue(graph, options, maxEdgeWeight);
+        this.workspace = new SearchWorkspace(graph.getVertexCount());
+        this.bidirectionalSearch = options.isBidirectionalSearch();
+        if (bidirectionalSearch && !graph.hasReverseEdges()) {
+            throw new IllegalArgumentException("Bidirectional search requires a graph with reverse edges");
+        }
+        if (bidirectionalSearch || backwardSearch) {
+            backwardPriorityQueue = newQueue(graph, options, maxEdgeWeight);
+            backwardWorkspace = new SearchWorkspace(graph.getVertexCount());
+        } else {
+            backwardPriorityQueue = null;
+            backwardWorkspace = null;
+        }
+    }
+
+    // the graph, queues and workspaces are shared with searches of subclasses, so a solver holds one set of them
+
+    final Graph getGraph() {
+        return graph;
     }
 
-    public void visit(PathQuery pathQuery) {
-        Graph.Vertex fromVertex = graph.findVertexByStringId(pathQuery.getFromStation());
-        Graph.Vertex toVertex = graph.findVertexByStringId(pathQuery.getToStation());
-        if (fromVertex == null || toVertex == null) {
-            solutions.addSolution(new EmptyRouteSolution(pathQuery));
+    final VertexQueue getQueue() {
+        return priorityQueue;
+    }
+
+    final SearchWorkspace getWorkspace() {
+        return workspace;
+    }
+
+    /**
+     * @return null unless the solver searches bidirectionally or is constructed for backward searches
+     */
+    final VertexQueue getBackwardQueue() {
+        return backwardPriorityQueue;
+    }
+
+    /**
+     * @return null unless the solver searches bidirectionally or is constructed for backward searches
+     */
+    final SearchWorkspace getBackwardWorkspace() {
+        return backwardWorkspace;
+    }
+
+    private static VertexQueue newQueue(Graph graph, RoutingOptions options, int maxEdgeWeight) {
+        return BucketQueue.isApplicable(maxEdgeWeight)
+                ? new BucketQueue(graph.getVertexCount(), maxEdgeWeight)
+                : new IndexedMinHeap(graph.getVertexCount(), options.getHeapArity());
+    }
+
+    static int findMaxEdgeWeight(Graph graph) {
+        int maxEdgeWeight = 0;
+        for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+            maxEdgeWeight = Math.max(maxEdgeWeight, graph.getEdgeWeight(edge));
+        }
+        return maxEdgeWeight;
+    }
+
+    @Override
+    Solution solvePath(PathQuery pathQuery) {
+        int fromVertex = graph.findVertexByStringId(pathQuery.getFromStation());
+        int toVertex = graph.findVertexByStringId(pathQuery.getToStation());
+        if (fromVertex == NO_VERTEX || toVertex == NO_VERTEX) {
+            return new EmptyRouteSolution(pathQuery);
         } else {
-            if (fromVertex.equals(toVertex)) {
-                solutions.addSolution(new PathSolution(SAME_VERTEX_PATH_COST, fromVertex.id, fromVertex.id));
+            if (fromVertex == toVertex) {
+                String station = graph.getVertexName(fromVertex);
+                return new PathSolution(SAME_VERTEX_PATH_COST, station, station);
             } else {
-                runDijkstraForStartVertex(fromVertex);
-                Solution solution = findPath(toVertex);
-                if (solution != null) {
-                    solutions.addSolution(solution);
+                Solution solution;
+                ShortestPathTree tree = findShortestPathTree(fromVertex);
+                if (tree != null) {
+                    solution = findPath(tree, toVertex);
+                } else if (bidirectionalSearch) {
+                    solution = findPathBidirectionally(fromVertex, toVertex);
                 } else {
-                    solutions.addSolution(new EmptyRouteSolution(pathQuery));
+                    runDijkstraForStartVertex(fromVertex, toVertex);
+                    solution = findPath(workspace, toVertex);
                 }
+                return solution != null ? solution : new EmptyRouteSolution(pathQuery);
             }
         }
     }
 
-    private Solution findPath(Graph.Vertex toVertex) {
-        Graph.Vertex v = toVertex;
+    /**
+     * @return path to the vertex by predecessors of the metadata or null if the vertex isn't reached
+     */
+    Solution findPath(VertexMetadata metadata, int toVertex) {
+        int v = toVertex;
         LinkedList<String> path = new LinkedList<>();
         do {
-            path.addFirst(v.id);
-        } while ((v = getMetadataFor(v).getPredecessor()) != null);
+            path.addFirst(graph.getVertexName(v));
+        } while ((v = metadata.getPredecessor(v)) != NO_VERTEX);
         if (path.size() > 1) {
-            int routeTime = getMetadataFor(toVertex).estimatedTime;
+            int routeTime = metadata.getEstimatedTime(toVertex);
             return new PathSolution(routeTime, path);
         } else {
             return null;
         }
     }
 
-    public void visit(NearbyQuery nearbyQuery) {
-        Graph.Vertex startVertex = graph.findVertexByStringId(nearbyQuery.getFromStation());
-        if (startVertex == null) {
-            solutions.addSolution(new EmptyNearbySolution(nearbyQuery));
+    @Override
+    Solution solveNearby(NearbyQuery nearbyQuery) {
+        int startVertex = graph.findVertexByStringId(nearbyQuery.getFromStation());
+        if (startVertex == NO_VERTEX) {
+            return new EmptyNearbySolution(nearbyQuery);
         } else {
-            runDijkstraForStartVertex(startVertex);
-            Solution nearbySolution = findNearbyStationsFor(nearbyQuery);
-            if (nearbySolution != null) {
-                solutions.addSolution(nearbySolution);
-            } else {
-                solutions.addSolution(new EmptyNearbySolution(nearbyQuery));
+            ShortestPathTree tree = findShortestPathTree(startVertex);
+            Solution nearbySolution = tree != null
+                    ? findNearbyStationsFor(tree, nearbyQuery.getTravelTime())
+                    : findNearbyStationsFor(startVertex, nearbyQuery.getTravelTime());
+            return nearbySolution != null ? nearbySolution : new EmptyNearbySolution(nearbyQuery);
+        }
+    }
+
+    @Override
+    Solution solveMatrix(MatrixQuery matrixQuery) {
+        MatrixSolution solution = new MatrixSolution(matrixQuery);
+        List<String> fromStations = matrixQuery.getFromStations();
+        int[] toVertices = findVertices(matrixQuery.getToStations());
+        for (int from = 0; from < fromStations.size(); from++) {
+            int fromVertex = graph.findVertexByStringId(fromStations.get(from));
+            if (fromVertex == NO_VERTEX) {
+                continue;
+            }
+            VertexMetadata metadata = findShortestPathTree(fromVertex);
+            if (metadata == null) {
+                runDijkstraForStartVertex(fromVertex, toVertices);
+                metadata = workspace;
+            }
+            for (int to = 0; to < toVertices.length; to++) {
+                int travelTime = toVertices[to] == NO_VERTEX ? UNREACHED : metadata.getEstimatedTime(toVertices[to]);
+                if (travelTime != UNREACHED) {
+                    solution.setTravelTime(from, to, travelTime);
+                }
             }
         }
+        return solution;
     }
 
-    private Solution findNearbyStationsFor(NearbyQuery nearbyQuery) {
-        Graph.Vertex startVertex = graph.findVertexByStringId(nearbyQuery.getFromStation());
+    /**
+     * @return vertices of the stations, {@link Graph#NO_VERTEX} for unknown ones
+     */
+    int[] findVertices(List<String> stations) {
+        int[] vertices = new int[stations.size()];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = graph.findVertexByStringId(stations.get(i));
+        }
+        return vertices;
+    }
+
+    /**
+     * Dijkstra search bounded by the travel time: vertices which can't be reached within it never get into the queue.
+     * Vertices are collected as they are settled, i.e. in ascending order of travel time, so the work is proportional
+     * to the amount of nearby stations and their edges rather than to the size of the graph.
+     */
+    private Solution findNearbyStationsFor(int startVertex, int maxTravelTime) {
         NearbySolution nearbySolution = new NearbySolution();
         boolean anyNearbyStations = false;
-        for (Graph.Vertex vertex : graph.getVertices()) {
-            int travelTime = getMetadataFor(vertex).getEstimatedTime();
-            if (!vertex.equals(startVertex) && travelTime <= nearbyQuery.getTravelTime()) {
+        initSearchFrom(startVertex);
+        while (!priorityQueue.isEmpty()) {
+            int vertex = priorityQueue.poll();
+            if (vertex != startVertex) {
                 anyNearbyStations = true;
-                nearbySolution.add(travelTime, vertex.id);
+                nearbySolution.add(workspace.getEstimatedTime(vertex), graph.getVertexName(vertex));
             }
+            relaxEdgesOf(vertex, maxTravelTime);
         }
         return anyNearbyStations ? nearbySolution : null;
     }
 
-    private void runDijkstraForStartVertex(Graph.Vertex startVertex) {
-        initMetadataWith(startVertex);
-        initPriorityQueue();
-        while (!priorityQueue.isEmpty()) {
-            VertexMetadata vertexMetadata = priorityQueue.poll();
-            Graph.Vertex vertex = vertexMetadata.getVertex();
-            graph.getEdgesAdjacentTo(vertex).forEach(edge -> {
-                Graph.Vertex adjacentVertex = edge.destinationVertex;
-                /* Since we use {@link #MAX_PATH_COST} we need to avoid overflow */
-                long newEstimation = (long) edge.weight + (long) vertexMetadata.getEstimatedTime();
-                VertexMetadata adjacentMetadata = getMetadataFor(adjacentVertex);
-                if (adjacentMetadata.getEstimatedTime() > newEstimation) {
-                    priorityQueue.remove(adjacentMetadata);
-                    newEstimation = newEstimation > MAX_PATH_COST ? MAX_PATH_COST : newEstimation;
-                    adjacentMetadata.setEstimatedTime((int) newEstimation);
-                    adjacentMetadata.setPredecessor(vertex);
-                    priorityQueue.add(adjacentMetadata);
-                }
-            });
+    private Solution findNearbyStationsFor(ShortestPathTree tree, int maxTravelTime) {
+        NearbySolution nearbySolution = new NearbySolution();
+        boolean anyNearbyStations = false;
+        // the first settled vertex is the start one
+        for (int i = 1; i < tree.getSettledAmount(); i++) {
+            int vertex = tree.getSettledVertex(i);
+            int travelTime = tree.getEstimatedTime(vertex);
+            if (travelTime > maxTravelTime) {
+                break;
+            }
+            anyNearbyStations = true;
+            nearbySolution.add(travelTime, graph.getVertexName(vertex));
         }
+        return anyNearbyStations ? nearbySolution : null;
     }
 
-    private void initMetadataWith(Graph.Vertex startVertex) {
-        Collection<Graph.Vertex> vertices = graph.getVertices();
-        vertexMetadata = new HashMap<>(vertices.size());
-        vertices.forEach(v -> vertexMetadata.put(v, new VertexMetadata(v)));
-        vertexMetadata.get(startVertex).setEstimatedTime(MIN_PATH_COST); // assign the smallest possible value to make it staring vertex
-    }
-
-    private void initPriorityQueue() {
-        priorityQueue = new PriorityQueue<>((vm1, vm2) -> vm1.getEstimatedTime() - vm2.getEstimatedTime());
-        priorityQueue.addAll(vertexMetadata.values());
-    }
-
-    private VertexMetadata getMetadataFor(Graph.Vertex vertex) {
-        return vertexMetadata.get(vertex);
+    /**
+     * @param targetVertex the search stops when it's settled
+     */
+    private void runDijkstraForStartVertex(int startVertex, int targetVertex) {
+        initSearchFrom(startVertex);
+        while (!priorityQueue.isEmpty()) {
+            int vertex = priorityQueue.poll();
+            if (vertex == targetVertex) {
+                settledVertices++;
+                heapOperations++;
+                return;
+            }
+            relaxEdgesOf(vertex, MAX_PATH_COST);
+        }
     }
 
-
-    Solutions getSolutions() {
-        return solutions;
+    /**
+     * The search stops when all the target vertices are settled, unknown ones ({@link Graph#NO_VERTEX}) are skipped.
+     */
+    private void runDijkstraForStartVertex(int startVertex, int[] targetVertices) {
+        if (matrixTargets == null) {
+            matrixTargets = new boolean[graph.getVertexCount()];
+        }
+        int targetsLeft = 0;
+        for (int vertex : targetVertices) {
+            if (vertex != NO_VERTEX && !matrixTargets[vertex]) {
+                matrixTargets[vertex] = true;
+                targetsLeft++;
+            }
+        }
+        initSearchFrom(startVertex);
+        while (targetsLeft > 0 && !priorityQueue.isEmpty()) {
+            int vertex = priorityQueue.poll();
+            if (matrixTargets[vertex]) {
+                matrixTargets[vertex] = false;
+                if (--targetsLeft == 0) {
+                    settledVertices++;
+                    heapOperations++;
+                    break;
+                }
+            }
+            relaxEdgesOf(vertex, MAX_PATH_COST);
+        }
+        for (int vertex : targetVertices) {
+            if (vertex != NO_VERTEX) {
+                matrixTargets[vertex] = false;
+            }
+        }
     }
 
     /**
-     * Two metadatas are equal when corresponding {@link #vertex} are equal (see {@link Graph.Vertex#equals(Object)}).
+     * @return tree of the vertex from the distance table, cached tree of the vertex, a tree built now
+     * if the vertex is a repeated source or null otherwise
      */
-    private static class VertexMetadata {
-        private final Graph.Vertex vertex;
-
-        private int estimatedTime;
-        private Graph.Vertex predecessor;
-
-        private VertexMetadata(Graph.Vertex vertex) {
-            this.vertex = vertex;
-            estimatedTime = MAX_PATH_COST;
-            predecessor = null;
+    private ShortestPathTree findShortestPathTree(int startVertex) {
+        if (distanceTable != null) {
+            cacheHits++;
+            return distanceTable.getTree(startVertex);
         }
-
-        private int getEstimatedTime() {
-            return estimatedTime;
+        if (!treeCache.isEnabled()) {
+            return null;
         }
-
-        private void setEstimatedTime(int estimatedTime) {
-            this.estimatedTime = estimatedTime;
+        ShortestPathTree tree = treeCache.get(startVertex);
+        if (tree != null) {
+            cacheHits++;
+        } else if (treeCache.isRepeatedSource(startVertex)) {
+            tree = buildShortestPathTree(startVertex);
+            treeCache.put(tree);
         }
+        return tree;
+    }
 
-        private Graph.Vertex getPredecessor() {
-            return predecessor;
+    /**
+     * @return complete tree of shortest paths from the vertex found by a search over the whole graph
+     */
+    ShortestPathTree buildShortestPathTree(int startVertex) {
+        int verticesAmount = graph.getVertexCount();
+        int[] settledVertices = new int[verticesAmount];
+        int settledAmount = 0;
+        initSearchFrom(startVertex);
+        while (!priorityQueue.isEmpty()) {
+            int vertex = priorityQueue.poll();
+            settledVertices[settledAmount++] = vertex;
+            relaxEdgesOf(vertex, MAX_PATH_COST);
         }
-
-        private void setPredecessor(Graph.Vertex predecessor) {
-            this.predecessor = predecessor;
+        int[] estimatedTimes = new int[verticesAmount];
+        int[] predecessors = new int[verticesAmount];
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            estimatedTimes[vertex] = workspace.getEstimatedTime(vertex);
+            predecessors[vertex] = workspace.getPredecessor(vertex);
         }
+        return new ShortestPathTree(startVertex, estimatedTimes, predecessors,
+                Arrays.copyOf(settledVertices, settledAmount));
+    }
 
-        private Graph.Vertex getVertex() {
-            return vertex;
-        }
+    private void initSearchFrom(int startVertex) {
+        initMetadataWith(startVertex);
+        priorityQueue.clear();
+        priorityQueue.insertOrDecrease(startVertex, MIN_PATH_COST);
+        heapOperations++;
+    }
 
-        @Override
-        public final int hashCode() {
-            return vertex.hashCode();
+    /**
+     * Relaxes outgoing edges of the just settled vertex.
+     * Vertices which can't be reached within maxTravelTime are left untouched.
+     */
+    private void relaxEdgesOf(int vertex, int maxTravelTime) {
+        int estimatedTime = workspace.getEstimatedTime(vertex);
+        int edgesBegin = graph.getEdgesBegin(vertex);
+        int edgesEnd = graph.getEdgesEnd(vertex);
+        // the vertex has just been polled
+        settledVertices++;
+        relaxedEdges += edgesEnd - edgesBegin;
+        heapOperations++;
+        for (int edge = edgesBegin; edge < edgesEnd; edge++) {
+            int adjacentVertex = graph.getEdgeTarget(edge);
+            /* Since we use {@link #MAX_PATH_COST} we need to avoid overflow */
+            long newEstimation = (long) graph.getEdgeWeight(edge) + (long) estimatedTime;
+            if (newEstimation <= maxTravelTime && workspace.getEstimatedTime(adjacentVertex) > newEstimation) {
+                workspace.update(adjacentVertex, (int) newEstimation, vertex);
+                priorityQueue.insertOrDecrease(adjacentVertex, (int) newEstimation);
+                heapOperations++;
+            }
         }
+    }
 
-        @Override
-        public final boolean equals(Object obj) {
-            if (obj == this) {
-                return true;
+    private Solution findPathBidirectionally(int fromVertex, int toVertex) {
+        initMetadataWith(fromVertex);
+        initBackwardMetadataWith(toVertex);
+        priorityQueue.clear();
+        priorityQueue.insertOrDecrease(fromVertex, MIN_PATH_COST);
+        backwardPriorityQueue.clear();
+        backwardPriorityQueue.insertOrDecrease(toVertex, MIN_PATH_COST);
+        heapOperations += 2;
+        long bestRouteTime = MAX_PATH_COST;
+        int meetingVertex = NO_VERTEX;
+        while (!priorityQueue.isEmpty() && !backwardPriorityQueue.isEmpty()) {
+            int forwardMin = priorityQueue.getMinKey();
+            int backwardMin = backwardPriorityQueue.getMinKey();
+            if ((long) forwardMin + backwardMin >= bestRouteTime) {
+                break; // neither search can improve the best route any more
             }
-            if (obj == null || obj.getClass() != getClass()) {
-                return false;
+            settledVertices++;
+            heapOperations++;
+            if (forwardMin <= backwardMin) {
+                int vertex = priorityQueue.poll();
+                int estimatedTime = workspace.getEstimatedTime(vertex);
+                relaxedEdges += graph.getEdgesEnd(vertex) - graph.getEdgesBegin(vertex);
+                for (int edge = graph.getEdgesBegin(vertex); edge < graph.getEdgesEnd(vertex); edge++) {
+                    int adjacentVertex = graph.getEdgeTarget(edge);
+                    long newEstimation = (long) graph.getEdgeWeight(edge) + (long) estimatedTime;
+                    if (workspace.getEstimatedTime(adjacentVertex) > newEstimation) {
+                        workspace.update(adjacentVertex, (int) newEstimation, vertex);
+                        priorityQueue.insertOrDecrease(adjacentVertex, (int) newEstimation);
+                        heapOperations++;
+                        long routeTime = newEstimation + backwardWorkspace.getEstimatedTime(adjacentVertex);
+                        if (routeTime < bestRouteTime) {
+                            bestRouteTime = routeTime;
+                            meetingVertex = adjacentVertex;
+                        }
+                    }
+                }
+            } else {
+                int vertex = backwardPriorityQueue.poll();
+                int estimatedTime = backwardWorkspace.getEstimatedTime(vertex);
+                relaxedEdges += graph.getReverseEdgesEnd(vertex) - graph.getReverseEdgesBegin(vertex);
+                for (int edge = graph.getReverseEdgesBegin(vertex); edge < graph.getReverseEdgesEnd(vertex); edge++) {
+                    int adjacentVertex = graph.getReverseEdgeSource(edge);
+                    long newEstimation = (long) graph.getReverseEdgeWeight(edge) + (long) estimatedTime;
+                    if (backwardWorkspace.getEstimatedTime(adjacentVertex) > newEstimation) {
+                        backwardWorkspace.update(adjacentVertex, (int) newEstimation, vertex);
+                        backwardPriorityQueue.insertOrDecrease(adjacentVertex, (int) newEstimation);
+                        heapOperations++;
+                        long routeTime = newEstimation + workspace.getEstimatedTime(adjacentVertex);
+                        if (routeTime < bestRouteTime) {
+                            bestRouteTime = routeTime;
+                            meetingVertex = adjacentVertex;
+                        }
+                    }
+                }
             }
-            VertexMetadata metadata = (VertexMetadata) obj;
-            return metadata.getVertex().equals(vertex);
         }
+        if (meetingVertex == NO_VERTEX) {
+            return null;
+        }
+        LinkedList<String> path = new LinkedList<>();
+        int v = meetingVertex;
+        do {
+            path.addFirst(graph.getVertexName(v));
+        } while ((v = workspace.getPredecessor(v)) != NO_VERTEX);
+        v = meetingVertex;
+        while ((v = backwardWorkspace.getPredecessor(v)) != NO_VERTEX) {
+            path.addLast(graph.getVertexName(v));
+        }
+        return new PathSolution((int) bestRouteTime, path);
+    }
+
+    private void initMetadataWith(int startVertex) {
+        workspace.reset();
+        workspace.update(startVertex, MIN_PATH_COST, NO_VERTEX); // assign the smallest possible value to make it staring vertex
+    }
+
+    private void initBackwardMetadataWith(int targetVertex) {
+        backwardWorkspace.reset();
+        backwardWorkspace.update(targetVertex, MIN_PATH_COST, NO_VERTEX);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,46 @@
+package com.rom.routing;
+
+/**
+ * Package-local immutable all-pairs table of a {@link Graph}: the complete {@link ShortestPathTree} of every vertex,
+ * i.e. a V&times;V matrix of travel times, a matrix of predecessors to unpack paths by and the order every source
+ * settles vertices in. Any path or nearby query is then answered by table lookups without searching.
+ * <p>
+ * The table takes {@link #BYTES_PER_ENTRY} bytes per pair of vertices, so it's worth building only for small graphs,
+ * where it pays off after a few queries per station. Dense station graphs of a few hundred vertices are the case.
+ *
+ * @author Roman Katerinenko
+ * @see DistanceTableBuilder
+ */
+final class DistanceTable {
+    // estimated time, predecessor and position in settling order
+    static final int BYTES_PER_ENTRY = 12;
+    // part of the max heap size the table may take
+    private static final int MEMORY_BUDGET_DIVISOR = 4;
+
+    private final ShortestPathTree[] trees;
+
+    DistanceTable(ShortestPathTree[] trees) {
+        this.trees = trees;
+    }
+
+    /**
+     * @return true if a table of the graph with that amount of vertices is within both the limit of vertices and
+     * the memory budget, which is a quarter of the max heap size
+     */
+    static boolean isAffordable(int verticesAmount, int maxVerticesAmount) {
+        long tableBytes = (long) BYTES_PER_ENTRY * verticesAmount * verticesAmount;
+        return verticesAmount <= maxVerticesAmount
+                && tableBytes <= Runtime.getRuntime().maxMemory() / MEMORY_BUDGET_DIVISOR;
+    }
+
+    int getVertexCount() {
+        return trees.length;
+    }
+
+    /**
+     * @return shortest paths from the source to every vertex
+     */
+    ShortestPathTree getTree(int source) {
+        return trees[source];
+    }
+}
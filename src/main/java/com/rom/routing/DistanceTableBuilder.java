@@ -0,0 +1,95 @@
+package com.rom.routing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds a {@link DistanceTable} of a {@link Graph} by a complete Dijkstra search from every vertex,
+ * {@link RoutingOptions#getParallelism()} searches at a time.
+ * <p>
+ * Trees are built by {@link DijkstraQuerySolver} with the same options queries are answered with,
+ * so paths of the table are exactly the ones a search per query would find.
+ *
+ * @author Roman Katerinenko
+ */
+class DistanceTableBuilder {
+    private final Graph graph;
+    private final RoutingOptions options;
+
+    DistanceTableBuilder(Graph graph, RoutingOptions options) {
+        this.graph = graph;
+        this.options = options;
+    }
+
+    DistanceTable build() {
+        return build(new ShortestPathTree[graph.getVertexCount()]);
+    }
+
+    /**
+     * Repairs the table of the graph before an update: trees the update doesn't affect are kept
+     * and only the rest are built again, so a small update costs a few searches rather than a search per station.
+     *
+     * @param table   table of the graph before the update, of the same vertices
+     * @param updater updater which has built the graph of this builder
+     */
+    DistanceTable update(DistanceTable table, GraphUpdater updater) {
+        ShortestPathTree[] trees = new ShortestPathTree[graph.getVertexCount()];
+        for (int source = 0; source < trees.length; source++) {
+            ShortestPathTree tree = table.getTree(source);
+            trees[source] = updater.affects(tree) ? null : tree;
+        }
+        return build(trees);
+    }
+
+    /**
+     * @param trees trees of some sources, trees of the others (null ones) are built
+     */
+    private DistanceTable build(ShortestPathTree[] trees) {
+        int verticesAmount = trees.length;
+        AtomicInteger nextSource = new AtomicInteger();
+        Runnable worker = () -> {
+            DijkstraQuerySolver solver = new DijkstraQuerySolver(graph, options, new ShortestPathTreeCache(0));
+            int source;
+            while ((source = nextSource.getAndIncrement()) < verticesAmount) {
+                if (trees[source] == null) {
+                    trees[source] = solver.buildShortestPathTree(source);
+                }
+            }
+        };
+        int parallelism = Math.min(options.getParallelism(), Math.max(1, verticesAmount));
+        if (parallelism == 1) {
+            worker.run();
+        } else {
+            buildInParallel(worker, parallelism);
+        }
+        return new DistanceTable(trees);
+    }
+
+    private static void buildInParallel(Runnable worker, int parallelism) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Future<?>> workers = new ArrayList<>(parallelism);
+            for (int i = 0; i < parallelism; i++) {
+                workers.add(pool.submit(worker));
+            }
+            for (Future<?> future : workers) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building the distance table", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -1,97 +1,54 @@
 package com.rom.routing;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
- * Package-local adjacency-list implementation of a graph to efficiently represent sparse graphs.
- * Insertion and {@link #getEdgesAdjacentTo(Vertex)} can be done in O(1) as it 'guarantees' by {@link HashMap}.
+ * Package-local immutable graph in compressed-sparse-row (CSR) form.
+ * Vertices are dense int ids in range [0, {@link #getVertexCount()}), station names are kept separately
+ * and are needed only to resolve queries and to format solutions.
+ * <p>
+ * Outgoing edges of vertex {@code v} occupy the range [{@link #getEdgesBegin(int)}, {@link #getEdgesEnd(int)})
+ * of the edge arrays, so scanning them is a sequential walk over two primitive arrays.
+ * Edges of a vertex are kept in the order they were given in the input.
+ * <p>
+ * Optionally the graph keeps reverse edges (incoming edges of each vertex) in the same form,
+ * which is needed by searches running backward from a target (see {@link #hasReverseEdges()}).
  * <p>
- * {@link #findVertexByStringId(String)} requires linear search over all vertices.
+ * {@link #findVertexByStringId(String)} is a hash table lookup and takes O(1) on average.
+ * <p>
+ * Note! Implementations differ only in where the arrays are: {@link ArrayGraph} keeps them on the heap,
+ * {@link BufferGraph} in buffers, e.g. mapped from a snapshot file ({@link GraphSnapshot}) or direct ones.
  *
  * @author Roman Katerinenko
- * @see Vertex
- * @see Edge
+ * @see GraphBuilder
  */
-class Graph {
-    private final Map<Vertex, ArrayList<Edge>> vertexToEdges = new HashMap<>();
+abstract class Graph {
+    static final int NO_VERTEX = -1;
 
-    void addEdge(Vertex fromVertex, Edge edge) {
-        addVertex(fromVertex).add(edge);
-    }
+    abstract int getVertexCount();
 
-    Collection<Edge> addVertex(Vertex vertex) {
-        ArrayList<Edge> edges = vertexToEdges.get(vertex);
-        if (edges == null) {
-            edges = new ArrayList<>();
-            vertexToEdges.put(vertex, edges);
-        }
-        return edges;
-    }
+    abstract int getEdgeCount();
 
-    Collection<Vertex> getVertices() {
-        return vertexToEdges.keySet();
-    }
+    abstract int getEdgesBegin(int vertex);
 
-    Collection<Edge> getEdgesAdjacentTo(Vertex target) {
-        return vertexToEdges.get(target);
-    }
+    abstract int getEdgesEnd(int vertex);
 
-    Vertex findVertexByStringId(String targetId) {
-        for (Vertex vertex : getVertices()) {
-            if (vertex.id.equals(targetId)) {
-                return vertex;
-            }
-        }
-        return null;
-    }
+    abstract int getEdgeTarget(int edge);
 
-    /**
-     * Note! Vertices are if and only if they have the same string id.
-     */
-    static class Vertex {
-        final String id;
+    abstract int getEdgeWeight(int edge);
+
+    abstract boolean hasReverseEdges();
 
-        Vertex(String id) {
-            this.id = id;
-        }
+    abstract int getReverseEdgesBegin(int vertex);
 
-        @Override
-        public final int hashCode() {
-            return id.hashCode();
-        }
+    abstract int getReverseEdgesEnd(int vertex);
 
-        @Override
-        public final boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null || getClass() != obj.getClass()) {
-                return false;
-            }
-            Vertex thatVertex = (Vertex) obj;
-            return thatVertex.id.equals(id);
-        }
+    abstract int getReverseEdgeSource(int reverseEdge);
 
-        @Override
-        public String toString() {
-            return id;
-        }
-    }
+    abstract int getReverseEdgeWeight(int reverseEdge);
+
+    abstract String getVertexName(int vertex);
 
     /**
-     * Note! Simplified directed edge.
-     * E.g., for weightened edge 'A -10-> B' (10 is weight), we keep only 'B' and 10.
+     * @return id of the vertex or {@link #NO_VERTEX} if there is no such station
      */
-    static class Edge {
-        final Vertex destinationVertex;
-        final int weight;
-
-        Edge(Vertex destinationVertex, int weight) {
-            this.destinationVertex = destinationVertex;
-            this.weight = weight;
-        }
-    }
-}
\ No newline at end of file
+    abstract int findVertexByStringId(String targetId);
+}
@@ -1,38 +1,300 @@
 package com.rom.routing;
 
+import com.rom.routing.core.Path;
 import com.rom.routing.core.PathTask;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
 
 /**
+ * Builds {@link Graph} out of {@link PathTask}.
+ * Vertex ids are assigned in order of the first appearance of a station in the input.
+ * Edges are laid out with a counting sort by source vertex, which keeps edges of each vertex in the input order.
+ * Reverse edges are laid out the same way by target vertex when searches need them
+ * (see {@link RoutingOptions#isReverseEdgesRequired()}).
+ * <p>
+ * Large tasks are built by {@link RoutingOptions#getParallelism()} threads, each taking a chunk of consecutive paths:
+ * a thread interns station names of its chunk into local ids, then the local names are merged chunk by chunk
+ * into global ids, and edges are sorted by a counting sort with a histogram per chunk. So the graph is exactly
+ * the one built by a single thread: the same vertex ids and the same order of edges, in particular
+ * the first of equal edges stays the first.
+ * <p>
+ * Optionally ({@link RoutingOptions#isVertexReordering()}) vertices are renumbered afterwards by
+ * {@link VertexReordering} for locality of memory accesses, and copied off the heap
+ * ({@link RoutingOptions#isOffHeap()}).
+ *
  * @author Roman Katerinenko
  */
 class GraphBuilder {
-    private final Map<String, Graph.Vertex> vertexCache = new HashMap<>();
+    // chunks of fewer paths aren't worth a thread
+    static final int MIN_CHUNK_PATHS = 1 << 15;
+
+    private final Map<String, Integer> vertexIds = new HashMap<>();
+    private final List<String> vertexNames = new ArrayList<>();
     private final PathTask pathTask;
-    private final Graph graph = new Graph();
+    private final boolean reverseEdges;
+    private final int parallelism;
+    private final boolean vertexReordering;
+    private final boolean offHeap;
 
     GraphBuilder(PathTask pathTask) {
+        this(pathTask, new RoutingOptions());
+    }
+
+    GraphBuilder(PathTask pathTask, RoutingOptions options) {
+        this(pathTask, options.isReverseEdgesRequired(), options.getParallelism(), options.isVertexReordering(),
+                options.isOffHeap());
+    }
+
+    GraphBuilder(PathTask pathTask, boolean reverseEdges) {
+        this(pathTask, reverseEdges, 1);
+    }
+
+    /**
+     * @param parallelism max amount of threads building the graph
+     */
+    GraphBuilder(PathTask pathTask, boolean reverseEdges, int parallelism) {
+        this(pathTask, reverseEdges, parallelism, false, false);
+    }
+
+    /**
+     * @param vertexReordering whether vertices get ids by {@link VertexReordering} instead of the first appearance
+     * @param offHeap          whether the graph is copied to direct buffers once it's built
+     */
+    GraphBuilder(PathTask pathTask, boolean reverseEdges, int parallelism, boolean vertexReordering,
+                 boolean offHeap) {
         this.pathTask = pathTask;
+        this.reverseEdges = reverseEdges;
+        this.parallelism = parallelism;
+        this.vertexReordering = vertexReordering;
+        this.offHeap = offHeap;
     }
 
     Graph build() {
-        pathTask.getPaths().forEach(route -> {
-            Graph.Vertex fromVertex = getCachedFor(route.getFromStation());
-            Graph.Vertex toVertex = getCachedFor(route.getToStation());
-            graph.addEdge(fromVertex, new Graph.Edge(toVertex, route.getTravelTime()));
+        Graph graph = buildInInputOrder();
+        if (vertexReordering) {
+            graph = new VertexReordering(graph).build();
+        }
+        // arrays of the heap graph become garbage, so the heap needs room for them only while building
+        return offHeap ? BufferGraph.copyOffHeap(graph) : graph;
+    }
+
+    private Graph buildInInputOrder() {
+        int chunksAmount = Math.min(parallelism, pathTask.getPaths().size() / MIN_CHUNK_PATHS);
+        if (chunksAmount > 1) {
+            ForkJoinPool pool = new ForkJoinPool(chunksAmount);
+            try {
+                return buildInParallel(pool, chunksAmount);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        Collection<Path> paths = pathTask.getPaths();
+        int edgesAmount = paths.size();
+        int[] edgeSources = new int[edgesAmount];
+        int[] edgeTargets = new int[edgesAmount];
+        int[] edgeWeights = new int[edgesAmount];
+        int edge = 0;
+        for (Path path : paths) {
+            edgeSources[edge] = getIdFor(path.getFromStation());
+            edgeTargets[edge] = getIdFor(path.getToStation());
+            edgeWeights[edge] = path.getTravelTime();
+            edge++;
+        }
+        int verticesAmount = vertexNames.size();
+        StationIndex stationIndex = new StationIndex(vertexNames.toArray(new String[verticesAmount]));
+        int[] edgeOffsets = countOffsets(edgeSources, verticesAmount);
+        int[] sortedTargets = new int[edgesAmount];
+        int[] sortedWeights = new int[edgesAmount];
+        scatter(edgeSources, edgeTargets, edgeWeights, edgeOffsets, sortedTargets, sortedWeights);
+        if (!reverseEdges) {
+            return new ArrayGraph(stationIndex, edgeOffsets, sortedTargets, sortedWeights);
+        }
+        int[] reverseEdgeOffsets = countOffsets(edgeTargets, verticesAmount);
+        int[] sortedSources = new int[edgesAmount];
+        int[] sortedReverseWeights = new int[edgesAmount];
+        scatter(edgeTargets, edgeSources, edgeWeights, reverseEdgeOffsets, sortedSources, sortedReverseWeights);
+        return new ArrayGraph(stationIndex, edgeOffsets, sortedTargets, sortedWeights,
+                reverseEdgeOffsets, sortedSources, sortedReverseWeights);
+    }
+
+    private Graph buildInParallel(ForkJoinPool pool, int chunksAmount) {
+        Path[] paths = pathTask.getPaths().toArray(new Path[0]);
+        int edgesAmount = paths.length;
+        int[] edgeSources = new int[edgesAmount];
+        int[] edgeTargets = new int[edgesAmount];
+        int[] edgeWeights = new int[edgesAmount];
+        int[] chunkBegins = new int[chunksAmount + 1];
+        for (int chunk = 0; chunk <= chunksAmount; chunk++) {
+            chunkBegins[chunk] = (int) ((long) edgesAmount * chunk / chunksAmount);
+        }
+        // every chunk gets edges of local vertex ids and local names in order of their first appearance in it
+        List<List<String>> chunkNames = new ArrayList<>(chunksAmount);
+        for (int chunk = 0; chunk < chunksAmount; chunk++) {
+            chunkNames.add(null);
+        }
+        runInParallel(pool, chunksAmount, chunk -> {
+            Map<String, Integer> localIds = new HashMap<>();
+            List<String> localNames = new ArrayList<>();
+            for (int edge = chunkBegins[chunk]; edge < chunkBegins[chunk + 1]; edge++) {
+                Path path = paths[edge];
+                edgeSources[edge] = getLocalIdFor(path.getFromStation(), localIds, localNames);
+                edgeTargets[edge] = getLocalIdFor(path.getToStation(), localIds, localNames);
+                edgeWeights[edge] = path.getTravelTime();
+            }
+            chunkNames.set(chunk, localNames);
+        });
+        // a station first appears in the first chunk having it, so merging chunks in order gives the ids
+        // a single thread would give
+        int[][] globalIds = new int[chunksAmount][];
+        for (int chunk = 0; chunk < chunksAmount; chunk++) {
+            List<String> localNames = chunkNames.get(chunk);
+            globalIds[chunk] = new int[localNames.size()];
+            for (int localId = 0; localId < localNames.size(); localId++) {
+                globalIds[chunk][localId] = getIdFor(localNames.get(localId));
+            }
+        }
+        runInParallel(pool, chunksAmount, chunk -> {
+            int[] ids = globalIds[chunk];
+            for (int edge = chunkBegins[chunk]; edge < chunkBegins[chunk + 1]; edge++) {
+                edgeSources[edge] = ids[edgeSources[edge]];
+                edgeTargets[edge] = ids[edgeTargets[edge]];
+            }
         });
-        return graph;
+        int verticesAmount = vertexNames.size();
+        StationIndex stationIndex = new StationIndex(vertexNames.toArray(new String[verticesAmount]));
+        int[] sortedTargets = new int[edgesAmount];
+        int[] sortedWeights = new int[edgesAmount];
+        int[] edgeOffsets = scatterInParallel(pool, chunkBegins, edgeSources, edgeTargets, edgeWeights,
+                verticesAmount, sortedTargets, sortedWeights);
+        if (!reverseEdges) {
+            return new ArrayGraph(stationIndex, edgeOffsets, sortedTargets, sortedWeights);
+        }
+        int[] sortedSources = new int[edgesAmount];
+        int[] sortedReverseWeights = new int[edgesAmount];
+        int[] reverseEdgeOffsets = scatterInParallel(pool, chunkBegins, edgeTargets, edgeSources, edgeWeights,
+                verticesAmount, sortedSources, sortedReverseWeights);
+        return new ArrayGraph(stationIndex, edgeOffsets, sortedTargets, sortedWeights,
+                reverseEdgeOffsets, sortedSources, sortedReverseWeights);
+    }
+
+    private static int getLocalIdFor(String station, Map<String, Integer> localIds, List<String> localNames) {
+        Integer id = localIds.get(station);
+        if (id == null) {
+            id = localNames.size();
+            localNames.add(station);
+            localIds.put(station, id);
+        }
+        return id;
+    }
+
+    private int getIdFor(String station) {
+        Integer id = vertexIds.get(station);
+        if (id == null) {
+            id = vertexNames.size();
+            vertexNames.add(station);
+            vertexIds.put(station, id);
+        }
+        return id;
+    }
+
+    /**
+     * @return CSR offsets, i.e. offsets[v] is the amount of keys less than v
+     */
+    static int[] countOffsets(int[] keys, int verticesAmount) {
+        int[] offsets = new int[verticesAmount + 1];
+        for (int key : keys) {
+            offsets[key + 1]++;
+        }
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            offsets[vertex + 1] += offsets[vertex];
+        }
+        return offsets;
+    }
+
+    /**
+     * Stable counting sort of (key, value, weight) triples by key into sortedValues and sortedWeights.
+     */
+    static void scatter(int[] keys, int[] values, int[] weights, int[] offsets,
+                                int[] sortedValues, int[] sortedWeights) {
+        int[] nextPosition = new int[offsets.length - 1];
+        System.arraycopy(offsets, 0, nextPosition, 0, nextPosition.length);
+        for (int i = 0; i < keys.length; i++) {
+            int position = nextPosition[keys[i]]++;
+            sortedValues[position] = values[i];
+            sortedWeights[position] = weights[i];
+        }
+    }
+
+    /**
+     * Parallel version of {@link #countOffsets(int[], int)} and {@link #scatter}: every chunk of triples counts
+     * its keys, then places its triples of a key after the ones of the chunks before it, so the sort is stable.
+     *
+     * @return CSR offsets of the keys
+     */
+    private static int[] scatterInParallel(ForkJoinPool pool, int[] chunkBegins, int[] keys, int[] values,
+                                           int[] weights, int verticesAmount,
+                                           int[] sortedValues, int[] sortedWeights) {
+        int chunksAmount = chunkBegins.length - 1;
+        int[][] nextPositions = new int[chunksAmount][];
+        runInParallel(pool, chunksAmount, chunk -> {
+            int[] counts = new int[verticesAmount];
+            for (int i = chunkBegins[chunk]; i < chunkBegins[chunk + 1]; i++) {
+                counts[keys[i]]++;
+            }
+            nextPositions[chunk] = counts;
+        });
+        int[] offsets = new int[verticesAmount + 1];
+        int position = 0;
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            offsets[vertex] = position;
+            for (int chunk = 0; chunk < chunksAmount; chunk++) {
+                int count = nextPositions[chunk][vertex];
+                nextPositions[chunk][vertex] = position;
+                position += count;
+            }
+        }
+        offsets[verticesAmount] = position;
+        runInParallel(pool, chunksAmount, chunk -> {
+            int[] nextPosition = nextPositions[chunk];
+            for (int i = chunkBegins[chunk]; i < chunkBegins[chunk + 1]; i++) {
+                int sortedPosition = nextPosition[keys[i]]++;
+                sortedValues[sortedPosition] = values[i];
+                sortedWeights[sortedPosition] = weights[i];
+            }
+        });
+        return offsets;
     }
 
-    private Graph.Vertex getCachedFor(String id) {
-        Graph.Vertex vertex = vertexCache.get(id);
-        if (vertex == null) {
-            vertex = new Graph.Vertex(id);
-            graph.addVertex(vertex);
-            vertexCache.put(id, vertex);
+    /**
+     * Runs the task for every id in [0, tasksAmount) in the pool and waits for all of them.
+     */
+    private static void runInParallel(ForkJoinPool pool, int tasksAmount, IntConsumer task) {
+        List<Future<?>> futures = new ArrayList<>(tasksAmount);
+        for (int i = 0; i < tasksAmount; i++) {
+            int taskId = i;
+            futures.add(pool.submit(() -> task.accept(taskId)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building the graph", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
         }
-        return vertex;
     }
-}
\ No newline at end of file
+}
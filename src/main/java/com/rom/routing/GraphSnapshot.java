@@ -0,0 +1,185 @@
+package com.rom.routing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Package-local reader and writer of binary graph snapshots. A snapshot is opened by mapping its sections into memory
+ * ({@link FileChannel#map(FileChannel.MapMode, long, long)}), so a graph is ready to answer queries without parsing,
+ * and pages of the file are loaded by OS on demand.
+ * <p>
+ * Layout of a snapshot, all ints are little-endian:
+ * <pre>
+ * header: magic, version, flags, vertices amount V, edges amount E, slots amount S, name bytes amount N
+ * edge offsets (V + 1 ints), edge targets (E ints), edge weights (E ints)
+ * reverse edge offsets (V + 1 ints), sources (E ints), weights (E ints) - only if flags have {@link #REVERSE_EDGES}
+ * name offsets (V + 1 ints), name slots (S ints, see {@link StationIndex#buildSlots(String[])}), names (N UTF-8 bytes)
+ * </pre>
+ * Note! Every section is mapped separately, so a section, not the whole file, is limited by 2GB.
+ *
+ * @author Roman Katerinenko
+ * @see BufferGraph
+ */
+final class GraphSnapshot {
+    private static final int MAGIC = 0x48505247; // "GRPH" in little-endian
+    private static final int VERSION = 1;
+    private static final int REVERSE_EDGES = 1;
+    private static final int HEADER_INTS = 7;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private GraphSnapshot() {
+        throw new IllegalStateException("Don't call this constructor");
+    }
+
+    /**
+     * @throws IllegalArgumentException if station names of the graph take more than 2GB, the limit of a section
+     */
+    static void write(Graph graph, File file) throws IOException {
+        int verticesAmount = graph.getVertexCount();
+        int edgesAmount = graph.getEdgeCount();
+        String[] names = new String[verticesAmount];
+        byte[][] encodedNames = new byte[verticesAmount][];
+        long nameBytesAmount = 0;
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            names[vertex] = graph.getVertexName(vertex);
+            encodedNames[vertex] = names[vertex].getBytes(StandardCharsets.UTF_8);
+            nameBytesAmount += encodedNames[vertex].length;
+        }
+        if (nameBytesAmount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Station names take " + nameBytesAmount + " bytes, more than 2GB");
+        }
+        int[] slots = StationIndex.buildSlots(names);
+        boolean reverseEdges = graph.hasReverseEdges();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            int[] header = {MAGIC, VERSION, reverseEdges ? REVERSE_EDGES : 0, verticesAmount, edgesAmount,
+                    slots.length, (int) nameBytesAmount};
+            for (int value : header) {
+                putInt(channel, buffer, value);
+            }
+            for (int vertex = 0; vertex <= verticesAmount; vertex++) {
+                putInt(channel, buffer, vertex < verticesAmount ? graph.getEdgesBegin(vertex) : edgesAmount);
+            }
+            for (int edge = 0; edge < edgesAmount; edge++) {
+                putInt(channel, buffer, graph.getEdgeTarget(edge));
+            }
+            for (int edge = 0; edge < edgesAmount; edge++) {
+                putInt(channel, buffer, graph.getEdgeWeight(edge));
+            }
+            if (reverseEdges) {
+                for (int vertex = 0; vertex <= verticesAmount; vertex++) {
+                    putInt(channel, buffer, vertex < verticesAmount ? graph.getReverseEdgesBegin(vertex) : edgesAmount);
+                }
+                for (int edge = 0; edge < edgesAmount; edge++) {
+                    putInt(channel, buffer, graph.getReverseEdgeSource(edge));
+                }
+                for (int edge = 0; edge < edgesAmount; edge++) {
+                    putInt(channel, buffer, graph.getReverseEdgeWeight(edge));
+                }
+            }
+            int nameOffset = 0;
+            for (int vertex = 0; vertex <= verticesAmount; vertex++) {
+                putInt(channel, buffer, nameOffset);
+                if (vertex < verticesAmount) {
+                    nameOffset += encodedNames[vertex].length;
+                }
+            }
+            for (int slot : slots) {
+                putInt(channel, buffer, slot);
+            }
+            for (byte[] name : encodedNames) {
+                for (byte b : name) {
+                    if (!buffer.hasRemaining()) {
+                        flush(channel, buffer);
+                    }
+                    buffer.put(b);
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * @throws IOException if the file can't be read or isn't a snapshot of a supported version
+     */
+    static Graph open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            IntBuffer header = map(channel, 0, HEADER_INTS * Integer.BYTES).asIntBuffer();
+            if (header.get(0) != MAGIC || header.get(1) != VERSION) {
+                throw new IOException(file + " isn't a graph snapshot of version " + VERSION);
+            }
+            boolean reverseEdges = (header.get(2) & REVERSE_EDGES) != 0;
+            int verticesAmount = header.get(3);
+            int edgesAmount = header.get(4);
+            int slotsAmount = header.get(5);
+            int nameBytesAmount = header.get(6);
+            long expectedSize = HEADER_INTS * Integer.BYTES
+                    + (long) Integer.BYTES * (verticesAmount + 1) * (reverseEdges ? 3 : 2)
+                    + (long) Integer.BYTES * edgesAmount * (reverseEdges ? 4 : 2)
+                    + (long) Integer.BYTES * slotsAmount + nameBytesAmount;
+            if (verticesAmount < 0 || edgesAmount < 0 || Integer.bitCount(slotsAmount) != 1
+                    || nameBytesAmount < 0 || channel.size() != expectedSize) {
+                throw new IOException(file + " is corrupted");
+            }
+            long position = HEADER_INTS * Integer.BYTES;
+            IntBuffer edgeOffsets = mapInts(channel, position, verticesAmount + 1);
+            position += (long) Integer.BYTES * (verticesAmount + 1);
+            IntBuffer edgeTargets = mapInts(channel, position, edgesAmount);
+            position += (long) Integer.BYTES * edgesAmount;
+            IntBuffer edgeWeights = mapInts(channel, position, edgesAmount);
+            position += (long) Integer.BYTES * edgesAmount;
+            IntBuffer reverseEdgeOffsets = null;
+            IntBuffer reverseEdgeSources = null;
+            IntBuffer reverseEdgeWeights = null;
+            if (reverseEdges) {
+                reverseEdgeOffsets = mapInts(channel, position, verticesAmount + 1);
+                position += (long) Integer.BYTES * (verticesAmount + 1);
+                reverseEdgeSources = mapInts(channel, position, edgesAmount);
+                position += (long) Integer.BYTES * edgesAmount;
+                reverseEdgeWeights = mapInts(channel, position, edgesAmount);
+                position += (long) Integer.BYTES * edgesAmount;
+            }
+            IntBuffer nameOffsets = mapInts(channel, position, verticesAmount + 1);
+            position += (long) Integer.BYTES * (verticesAmount + 1);
+            IntBuffer slots = mapInts(channel, position, slotsAmount);
+            position += (long) Integer.BYTES * slotsAmount;
+            ByteBuffer nameBytes = map(channel, position, nameBytesAmount);
+            // mappings stay valid after the channel is closed
+            return new BufferGraph(edgeOffsets, edgeTargets, edgeWeights,
+                    reverseEdgeOffsets, reverseEdgeSources, reverseEdgeWeights, nameOffsets, nameBytes, slots);
+        }
+    }
+
+    private static IntBuffer mapInts(FileChannel channel, long position, int amount) throws IOException {
+        if ((long) amount * Integer.BYTES > Integer.MAX_VALUE) {
+            throw new IOException("Section of " + amount + " ints exceeds 2GB");
+        }
+        return map(channel, position, amount * Integer.BYTES).asIntBuffer();
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void putInt(FileChannel channel, ByteBuffer buffer, int value) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) {
+            flush(channel, buffer);
+        }
+        buffer.putInt(value);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,89 @@
+package com.rom.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes of routes between stations, e.g. delays and closures, to apply to the graph of a running
+ * {@link RoutingEngine} by {@link RoutingEngine#update(GraphUpdate)}.
+ * <p>
+ * A change replaces all routes from one station to another, a later change of the same stations replaces
+ * an earlier one. Travel times of routes to or from unknown stations add the stations to the graph,
+ * while removals of such routes change nothing.
+ *
+ * @author Roman Katerinenko
+ */
+public final class GraphUpdate {
+    static final int REMOVED = -1;
+
+    // travel time of the route or REMOVED keyed by its stations, in the order of changes
+    private final Map<Route, Integer> travelTimes = new LinkedHashMap<>();
+
+    /**
+     * Adds the route or changes its travel time.
+     */
+    public GraphUpdate setTravelTime(String fromStation, String toStation, int travelTime) {
+        if (travelTime < 0) {
+            throw new IllegalArgumentException("Travel time must not be negative, but was " + travelTime);
+        }
+        travelTimes.put(new Route(fromStation, toStation), travelTime);
+        return this;
+    }
+
+    /**
+     * Removes the route if there is one. Unknown stations aren't added to the graph.
+     */
+    public GraphUpdate removeRoute(String fromStation, String toStation) {
+        travelTimes.put(new Route(fromStation, toStation), REMOVED);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return travelTimes.isEmpty();
+    }
+
+    /**
+     * @return travel times of changed routes or {@link #REMOVED}
+     */
+    Map<Route, Integer> getTravelTimes() {
+        return travelTimes;
+    }
+
+    static final class Route {
+        private final String fromStation;
+        private final String toStation;
+
+        private Route(String fromStation, String toStation) {
+            if (fromStation == null || toStation == null) {
+                throw new IllegalArgumentException("Stations of a route must not be null");
+            }
+            this.fromStation = fromStation;
+            this.toStation = toStation;
+        }
+
+        String getFromStation() {
+            return fromStation;
+        }
+
+        String getToStation() {
+            return toStation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Route)) {
+                return false;
+            }
+            Route route = (Route) o;
+            return fromStation.equals(route.fromStation) && toStation.equals(route.toStation);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * fromStation.hashCode() + toStation.hashCode();
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+import static com.rom.routing.SearchWorkspace.UNREACHED;
+
+/**
+ * Builds a copy of an immutable {@link Graph} with a {@link GraphUpdate} applied, so queries being answered
+ * over the original graph aren't disturbed. Vertices keep their ids, added stations get ids after the existing ones.
+ * Edges of a vertex keep their order: a changed route takes the place of its first edge,
+ * an added route goes after the edges of its source vertex. Removals of routes of unknown stations are ignored.
+ * <p>
+ * It also tells what the update means to data computed over the original graph, so the data can be kept or
+ * repaired instead of rebuilding it: {@link #affects(VertexMetadata)} for shortest-path trees and
+ * {@link #isAnyTravelTimeDecreased()} for lower bounds of travel times.
+ *
+ * @author Roman Katerinenko
+ */
+class GraphUpdater {
+    private static final int NO_CHANGE = -1;
+
+    private final Graph graph;
+    private final GraphUpdate update;
+    // changed routes resolved to vertices, times are min times of the routes or UNREACHED if there is no route
+    private int[] changedSources;
+    private int[] changedTargets;
+    private int[] oldTimes;
+    private int[] newTimes;
+    private boolean stationsAdded;
+
+    GraphUpdater(Graph graph, GraphUpdate update) {
+        this.graph = graph;
+        this.update = update;
+    }
+
+    Graph build() {
+        int oldVerticesAmount = graph.getVertexCount();
+        String[] names = new String[oldVerticesAmount + 2 * update.getTravelTimes().size()];
+        for (int vertex = 0; vertex < oldVerticesAmount; vertex++) {
+            names[vertex] = graph.getVertexName(vertex);
+        }
+        Map<String, Integer> addedIds = new HashMap<>();
+        int changesAmount = update.getTravelTimes().size();
+        changedSources = new int[changesAmount];
+        changedTargets = new int[changesAmount];
+        oldTimes = new int[changesAmount];
+        newTimes = new int[changesAmount];
+        int change = 0;
+        for (Map.Entry<GraphUpdate.Route, Integer> entry : update.getTravelTimes().entrySet()) {
+            GraphUpdate.Route route = entry.getKey();
+            int travelTime = entry.getValue();
+            if (travelTime == GraphUpdate.REMOVED && (graph.findVertexByStringId(route.getFromStation()) == NO_VERTEX
+                    || graph.findVertexByStringId(route.getToStation()) == NO_VERTEX)) {
+                // there is no such route to remove, and removals don't add stations
+                continue;
+            }
+            changedSources[change] = resolve(route.getFromStation(), names, addedIds);
+            changedTargets[change] = resolve(route.getToStation(), names, addedIds);
+            newTimes[change] = travelTime == GraphUpdate.REMOVED ? UNREACHED : travelTime;
+            oldTimes[change] = UNREACHED;
+            change++;
+        }
+        changesAmount = change;
+        changedSources = Arrays.copyOf(changedSources, changesAmount);
+        changedTargets = Arrays.copyOf(changedTargets, changesAmount);
+        oldTimes = Arrays.copyOf(oldTimes, changesAmount);
+        newTimes = Arrays.copyOf(newTimes, changesAmount);
+        int verticesAmount = oldVerticesAmount + addedIds.size();
+        stationsAdded = verticesAmount > oldVerticesAmount;
+        // changes of every source vertex, ordered as they were made
+        int[] changeOffsets = GraphBuilder.countOffsets(changedSources, verticesAmount);
+        int[] changesBySource = new int[changesAmount];
+        int[] nextPosition = Arrays.copyOf(changeOffsets, verticesAmount);
+        for (int i = 0; i < changesAmount; i++) {
+            changesBySource[nextPosition[changedSources[i]]++] = i;
+        }
+        boolean[] emitted = new boolean[changesAmount];
+        int capacity = graph.getEdgeCount() + changesAmount;
+        int[] edgeOffsets = new int[verticesAmount + 1];
+        int[] edgeSources = new int[capacity];
+        int[] edgeTargets = new int[capacity];
+        int[] edgeWeights = new int[capacity];
+        int edgesAmount = 0;
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            edgeOffsets[vertex] = edgesAmount;
+            int changesBegin = changeOffsets[vertex];
+            int changesEnd = changeOffsets[vertex + 1];
+            if (vertex < oldVerticesAmount) {
+                for (int edge = graph.getEdgesBegin(vertex); edge < graph.getEdgesEnd(vertex); edge++) {
+                    int target = graph.getEdgeTarget(edge);
+                    int weight = graph.getEdgeWeight(edge);
+                    int changeId = findChange(changesBySource, changesBegin, changesEnd, target);
+                    if (changeId == NO_CHANGE) {
+                        edgeSources[edgesAmount] = vertex;
+                        edgeTargets[edgesAmount] = target;
+                        edgeWeights[edgesAmount++] = weight;
+                        continue;
+                    }
+                    oldTimes[changeId] = Math.min(oldTimes[changeId], weight);
+                    if (!emitted[changeId] && newTimes[changeId] != UNREACHED) {
+                        edgeSources[edgesAmount] = vertex;
+                        edgeTargets[edgesAmount] = target;
+                        edgeWeights[edgesAmount++] = newTimes[changeId];
+                    }
+                    emitted[changeId] = true;
+                }
+            }
+            for (int i = changesBegin; i < changesEnd; i++) {
+                int changeId = changesBySource[i];
+                if (!emitted[changeId] && newTimes[changeId] != UNREACHED) {
+                    edgeSources[edgesAmount] = vertex;
+                    edgeTargets[edgesAmount] = changedTargets[changeId];
+                    edgeWeights[edgesAmount++] = newTimes[changeId];
+                }
+            }
+        }
+        edgeOffsets[verticesAmount] = edgesAmount;
+        StationIndex stationIndex = new StationIndex(Arrays.copyOf(names, verticesAmount));
+        edgeTargets = Arrays.copyOf(edgeTargets, edgesAmount);
+        edgeWeights = Arrays.copyOf(edgeWeights, edgesAmount);
+        if (!graph.hasReverseEdges()) {
+            return new ArrayGraph(stationIndex, edgeOffsets, edgeTargets, edgeWeights);
+        }
+        edgeSources = Arrays.copyOf(edgeSources, edgesAmount);
+        int[] reverseEdgeOffsets = GraphBuilder.countOffsets(edgeTargets, verticesAmount);
+        int[] reverseEdgeSources = new int[edgesAmount];
+        int[] reverseEdgeWeights = new int[edgesAmount];
+        GraphBuilder.scatter(edgeTargets, edgeSources, edgeWeights, reverseEdgeOffsets,
+                reverseEdgeSources, reverseEdgeWeights);
+        return new ArrayGraph(stationIndex, edgeOffsets, edgeTargets, edgeWeights,
+                reverseEdgeOffsets, reverseEdgeSources, reverseEdgeWeights);
+    }
+
+    /**
+     * @return true if the update adds stations, so data of the original graph doesn't cover all vertices
+     */
+    boolean isStationsAdded() {
+        return stationsAdded;
+    }
+
+    /**
+     * @return true if any route got shorter or was added, otherwise travel times between all stations
+     * can only grow and their lower bounds (e.g. {@link Landmarks}) stay valid
+     */
+    boolean isAnyTravelTimeDecreased() {
+        for (int i = 0; i < newTimes.length; i++) {
+            if (newTimes[i] < oldTimes[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tells if the tree of shortest paths from a source over the original graph is no longer the tree
+     * over the updated graph: either a route of the tree got longer (or removed) or a changed route
+     * gives a shorter path to its target.
+     *
+     * @param tree complete search result over the original graph
+     */
+    boolean affects(VertexMetadata tree) {
+        if (stationsAdded) {
+            return true;
+        }
+        for (int i = 0; i < newTimes.length; i++) {
+            int source = changedSources[i];
+            int target = changedTargets[i];
+            int sourceTime = tree.getEstimatedTime(source);
+            if (sourceTime == UNREACHED || newTimes[i] == oldTimes[i]) {
+                continue;
+            }
+            if (newTimes[i] > oldTimes[i] ? tree.getPredecessor(target) == source
+                    : (long) sourceTime + newTimes[i] < tree.getEstimatedTime(target)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int resolve(String station, String[] names, Map<String, Integer> addedIds) {
+        int vertex = graph.findVertexByStringId(station);
+        if (vertex == NO_VERTEX) {
+            Integer id = addedIds.get(station);
+            if (id == null) {
+                id = graph.getVertexCount() + addedIds.size();
+                names[id] = station;
+                addedIds.put(station, id);
+            }
+            vertex = id;
+        }
+        return vertex;
+    }
+
+    /**
+     * @return id of the change of the route to the target among changes of its source or {@link #NO_CHANGE}
+     */
+    private int findChange(int[] changesBySource, int begin, int end, int target) {
+        for (int i = begin; i < end; i++) {
+            if (changedTargets[changesBySource[i]] == target) {
+                return changesBySource[i];
+            }
+        }
+        return NO_CHANGE;
+    }
+}
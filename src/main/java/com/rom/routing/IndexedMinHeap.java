@@ -0,0 +1,126 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+
+/**
+ * Package-local position-indexed d-ary MIN-HEAP of vertex ids keyed by int values.
+ * It remembers a position of every vertex in the heap, so {@link #insertOrDecrease(int, int)} of a vertex
+ * already in the heap is a sift-up from its current position and takes O(log V) instead of the O(V) linear scan
+ * {@link java.util.PriorityQueue#remove(Object)} requires.
+ * <p>
+ * Arity is configurable. Wider heaps are shallower, which makes decrease-key cheaper and extraction of
+ * the minimum more expensive; 4 is a good default for sparse graphs.
+ * <p>
+ * Note! Keys are stored next to vertex ids in heap order, so sifting doesn't touch per-vertex arrays except positions.
+ * Sifting stops on equal keys, so among vertices with the same key the earlier inserted one is extracted first
+ * as long as their relative position isn't changed by other operations.
+ *
+ * @author Roman Katerinenko
+ */
+final class IndexedMinHeap implements VertexQueue {
+    static final int DEFAULT_ARITY = 4;
+
+    private static final int NOT_IN_HEAP = -1;
+
+    private final int arity;
+    private final int[] heapVertices;
+    private final int[] heapKeys;
+    private final int[] positions;
+    private int size;
+
+    IndexedMinHeap(int capacity, int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("Heap arity must be at least 2, but was " + arity);
+        }
+        this.arity = arity;
+        heapVertices = new int[capacity];
+        heapKeys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, NOT_IN_HEAP);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void insertOrDecrease(int vertex, int key) {
+        int position = positions[vertex];
+        if (position == NOT_IN_HEAP) {
+            position = size++;
+        }
+        siftUp(position, vertex, key);
+    }
+
+    @Override
+    public int getMinKey() {
+        return heapKeys[0];
+    }
+
+    @Override
+    public int poll() {
+        int minVertex = heapVertices[0];
+        positions[minVertex] = NOT_IN_HEAP;
+        int lastPosition = --size;
+        if (lastPosition > 0) {
+            siftDown(heapVertices[lastPosition], heapKeys[lastPosition]);
+        }
+        return minVertex;
+    }
+
+    /**
+     * Removes all vertices. Takes time proportional to the amount of vertices left in the heap.
+     */
+    @Override
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heapVertices[i]] = NOT_IN_HEAP;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position, int vertex, int key) {
+        while (position > 0) {
+            int parent = (position - 1) / arity;
+            int parentKey = heapKeys[parent];
+            if (parentKey <= key) {
+                break;
+            }
+            place(position, heapVertices[parent], parentKey);
+            position = parent;
+        }
+        place(position, vertex, key);
+    }
+
+    private void siftDown(int vertex, int key) {
+        int position = 0;
+        while (true) {
+            int firstChild = position * arity + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            int lastChild = Math.min(firstChild + arity, size);
+            int minChild = firstChild;
+            int minChildKey = heapKeys[firstChild];
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                if (heapKeys[child] < minChildKey) {
+                    minChild = child;
+                    minChildKey = heapKeys[child];
+                }
+            }
+            if (key <= minChildKey) {
+                break;
+            }
+            place(position, heapVertices[minChild], minChildKey);
+            position = minChild;
+        }
+        place(position, vertex, key);
+    }
+
+    private void place(int position, int vertex, int key) {
+        heapVertices[position] = vertex;
+        heapKeys[position] = key;
+        positions[vertex] = position;
+    }
+}
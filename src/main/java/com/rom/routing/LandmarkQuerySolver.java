@@ -0,0 +1,82 @@
+package com.rom.routing;
+
+import com.rom.routing.core.EmptyRouteSolution;
+import com.rom.routing.core.PathQuery;
+import com.rom.routing.core.Solution;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+
+/**
+ * Answers {@link PathQuery} with A* search, which uses lower bounds of {@link Landmarks} as the estimate of
+ * the remaining travel time (ALT). The bounds are consistent, so every vertex is settled once, and the search goes
+ * towards the destination instead of spreading evenly around the start like Dijkstra does.
+ * It runs over the queue and the workspace of {@link DijkstraQuerySolver}.
+ * <p>
+ * Other queries, as well as path queries between the same station or unknown stations, are answered
+ * by {@link DijkstraQuerySolver}.
+ * <p>
+ * Note! If several routes have the same travel time, the route found may differ from the one Dijkstra finds.
+ *
+ * @author Roman Katerinenko
+ * @see LandmarksBuilder
+ */
+class LandmarkQuerySolver extends DijkstraQuerySolver {
+    private final Landmarks landmarks;
+
+    /**
+     * @param landmarks landmarks of the graph, which may be shared with other solvers of the same graph
+     */
+    LandmarkQuerySolver(Graph graph, Landmarks landmarks, RoutingOptions options, ShortestPathTreeCache treeCache) {
+        super(graph, options, treeCache, false);
+        this.landmarks = landmarks;
+    }
+
+    @Override
+    Solution solvePath(PathQuery pathQuery) {
+        Graph graph = getGraph();
+        int fromVertex = graph.findVertexByStringId(pathQuery.getFromStation());
+        int toVertex = graph.findVertexByStringId(pathQuery.getToStation());
+        if (fromVertex == NO_VERTEX || toVertex == NO_VERTEX || fromVertex == toVertex) {
+            return super.solvePath(pathQuery);
+        }
+        runAStar(fromVertex, toVertex);
+        Solution solution = findPath(getWorkspace(), toVertex);
+        return solution != null ? solution : new EmptyRouteSolution(pathQuery);
+    }
+
+    /**
+     * Keys of the queue are travel times from the start plus lower bounds of travel times to the destination.
+     */
+    private void runAStar(int fromVertex, int toVertex) {
+        Graph graph = getGraph();
+        VertexQueue queue = getQueue();
+        SearchWorkspace workspace = getWorkspace();
+        workspace.reset();
+        workspace.update(fromVertex, 0, NO_VERTEX);
+        queue.clear();
+        queue.insertOrDecrease(fromVertex, landmarks.getLowerBound(fromVertex, toVertex));
+        heapOperations++;
+        while (!queue.isEmpty()) {
+            int vertex = queue.poll();
+            settledVertices++;
+            heapOperations++;
+            if (vertex == toVertex) {
+                return;
+            }
+            int estimatedTime = workspace.getEstimatedTime(vertex);
+            relaxedEdges += graph.getEdgesEnd(vertex) - graph.getEdgesBegin(vertex);
+            for (int edge = graph.getEdgesBegin(vertex); edge < graph.getEdgesEnd(vertex); edge++) {
+                int adjacentVertex = graph.getEdgeTarget(edge);
+                long newEstimation = (long) graph.getEdgeWeight(edge) + estimatedTime;
+                if (workspace.getEstimatedTime(adjacentVertex) > newEstimation) {
+                    long key = newEstimation + landmarks.getLowerBound(adjacentVertex, toVertex);
+                    if (key < SearchWorkspace.UNREACHED) {
+                        workspace.update(adjacentVertex, (int) newEstimation, vertex);
+                        queue.insertOrDecrease(adjacentVertex, (int) key);
+                        heapOperations++;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.rom.routing;
+
+/**
+ * Package-local immutable tables of travel times from and to a few landmark vertices, which give lower bounds
+ * of the travel time between any two vertices by the triangle inequality:
+ * {@code d(v, t) >= d(v, L) - d(t, L)} and {@code d(v, t) >= d(L, t) - d(L, v)} for every landmark L.
+ * <p>
+ * Note! Times of a vertex to and from all landmarks are kept next to each other,
+ * so a bound for a vertex reads a couple of cache lines.
+ *
+ * @author Roman Katerinenko
+ * @see LandmarksBuilder
+ * @see LandmarkQuerySolver
+ */
+final class Landmarks {
+    static final int UNREACHABLE = SearchWorkspace.UNREACHED;
+
+    private final int[] landmarks;
+    // [v * amount + i] is the travel time from the i-th landmark to v or UNREACHABLE
+    private final int[] timesFrom;
+    // [v * amount + i] is the travel time from v to the i-th landmark or UNREACHABLE
+    private final int[] timesTo;
+
+    Landmarks(int[] landmarks, int[] timesFrom, int[] timesTo) {
+        this.landmarks = landmarks;
+        this.timesFrom = timesFrom;
+        this.timesTo = timesTo;
+    }
+
+    int getAmount() {
+        return landmarks.length;
+    }
+
+    int getLandmark(int i) {
+        return landmarks[i];
+    }
+
+    /**
+     * @return lower bound of the travel time from the vertex to the target vertex
+     */
+    int getLowerBound(int vertex, int targetVertex) {
+        int amount = landmarks.length;
+        int vertexBase = vertex * amount;
+        int targetBase = targetVertex * amount;
+        int bound = 0;
+        for (int i = 0; i < amount; i++) {
+            int vertexTo = timesTo[vertexBase + i];
+            int targetTo = timesTo[targetBase + i];
+            // unreachable landmarks give no bound
+            if (vertexTo != UNREACHABLE && targetTo != UNREACHABLE) {
+                bound = Math.max(bound, vertexTo - targetTo);
+            }
+            int vertexFrom = timesFrom[vertexBase + i];
+            int targetFrom = timesFrom[targetBase + i];
+            if (vertexFrom != UNREACHABLE && targetFrom != UNREACHABLE) {
+                bound = Math.max(bound, targetFrom - vertexFrom);
+            }
+        }
+        return bound;
+    }
+}
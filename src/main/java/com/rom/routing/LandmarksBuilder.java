@@ -0,0 +1,110 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+
+import static com.rom.routing.Landmarks.UNREACHABLE;
+
+/**
+ * Builds {@link Landmarks} of a {@link Graph} with reverse edges.
+ * <p>
+ * Landmarks are chosen by the farthest heuristic: the first one is the vertex farthest from vertex 0, every next one
+ * is the vertex farthest from the landmarks chosen so far (by the round trip time to the nearest of them), vertices
+ * which have no round trip to any of them go first. So landmarks lie at the edges of the graph, where they give
+ * the tightest bounds, and cover all its strongly connected parts if there are enough of them.
+ * Every landmark takes a forward and a backward Dijkstra search over the whole graph.
+ *
+ * @author Roman Katerinenko
+ */
+class LandmarksBuilder {
+    private final Graph graph;
+    private final int amount;
+    private final IndexedMinHeap queue;
+    private final int[] times;
+
+    /**
+     * @param amount amount of landmarks, it's reduced to the amount of vertices for small graphs
+     */
+    LandmarksBuilder(Graph graph, int amount) {
+        if (!graph.hasReverseEdges()) {
+            throw new IllegalArgumentException("Landmarks require a graph with reverse edges");
+        }
+        this.graph = graph;
+        this.amount = Math.min(amount, graph.getVertexCount());
+        this.queue = new IndexedMinHeap(graph.getVertexCount(), IndexedMinHeap.DEFAULT_ARITY);
+        this.times = new int[graph.getVertexCount()];
+    }
+
+    Landmarks build() {
+        int verticesAmount = graph.getVertexCount();
+        int[] landmarks = new int[amount];
+        int[] timesFrom = new int[verticesAmount * amount];
+        int[] timesTo = new int[verticesAmount * amount];
+        boolean[] chosen = new boolean[verticesAmount];
+        // round trip time from every vertex to the nearest landmark, vertices not covered by landmarks go first
+        long[] nearestRoundTrips = new long[verticesAmount];
+        Arrays.fill(nearestRoundTrips, Long.MAX_VALUE);
+        int nextLandmark = amount > 0 ? farthestFrom(0) : 0;
+        for (int i = 0; i < amount; i++) {
+            int landmark = nextLandmark;
+            landmarks[i] = landmark;
+            chosen[landmark] = true;
+            runSearchFrom(landmark, false);
+            for (int vertex = 0; vertex < verticesAmount; vertex++) {
+                timesFrom[vertex * amount + i] = times[vertex];
+            }
+            runSearchFrom(landmark, true);
+            for (int vertex = 0; vertex < verticesAmount; vertex++) {
+                timesTo[vertex * amount + i] = times[vertex];
+                int timeFrom = timesFrom[vertex * amount + i];
+                if (timeFrom != UNREACHABLE && times[vertex] != UNREACHABLE) {
+                    nearestRoundTrips[vertex] = Math.min(nearestRoundTrips[vertex], (long) timeFrom + times[vertex]);
+                }
+            }
+            long farthestRoundTrip = -1;
+            for (int vertex = 0; vertex < verticesAmount; vertex++) {
+                if (!chosen[vertex] && nearestRoundTrips[vertex] > farthestRoundTrip) {
+                    nextLandmark = vertex;
+                    farthestRoundTrip = nearestRoundTrips[vertex];
+                }
+            }
+        }
+        return new Landmarks(landmarks, timesFrom, timesTo);
+    }
+
+    private int farthestFrom(int startVertex) {
+        runSearchFrom(startVertex, false);
+        int farthest = startVertex;
+        for (int vertex = 0; vertex < times.length; vertex++) {
+            if (times[vertex] != UNREACHABLE && times[vertex] > times[farthest]) {
+                farthest = vertex;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * Dijkstra search over the whole graph, which leaves travel times in {@link #times}.
+     *
+     * @param backward whether the search goes over reverse edges, i.e. finds times to the start vertex
+     */
+    private void runSearchFrom(int startVertex, boolean backward) {
+        Arrays.fill(times, UNREACHABLE);
+        times[startVertex] = 0;
+        queue.clear();
+        queue.insertOrDecrease(startVertex, 0);
+        while (!queue.isEmpty()) {
+            int vertex = queue.poll();
+            int time = times[vertex];
+            int begin = backward ? graph.getReverseEdgesBegin(vertex) : graph.getEdgesBegin(vertex);
+            int end = backward ? graph.getReverseEdgesEnd(vertex) : graph.getEdgesEnd(vertex);
+            for (int edge = begin; edge < end; edge++) {
+                int adjacentVertex = backward ? graph.getReverseEdgeSource(edge) : graph.getEdgeTarget(edge);
+                long newTime = (long) time + (backward ? graph.getReverseEdgeWeight(edge) : graph.getEdgeWeight(edge));
+                if (newTime < times[adjacentVertex]) {
+                    times[adjacentVertex] = (int) newTime;
+                    queue.insertOrDecrease(adjacentVertex, (int) newTime);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.rom.routing;
+
+import com.rom.routing.core.Query;
+import com.rom.routing.core.Solution;
+import com.rom.routing.core.Solutions;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+/**
+ * Runs a batch of queries against a shared immutable {@link Graph} either in the calling thread or,
+ * when parallelism is greater than 1, on a {@link ForkJoinPool} of that size.
+ * <p>
+ * Every thread gets its own {@link QuerySolver} from the factory the first time it solves a query and reuses it
+ * for all later queries of this executor, so search state is allocated once per thread rather than per query.
+ * Executors made by {@link #withSolverFactory(Supplier)} share a single slot per thread, which drops the solver
+ * of a former factory as soon as the thread solves a query with the next one, so solvers of a graph replaced
+ * by an update don't pin it, its workspaces and its preprocessed data.
+ * Workers take queries in small consecutive chunks, which balances load when some queries are much heavier
+ * than others. Solutions are passed on in the order of queries regardless of the order they were found in,
+ * each one as soon as all solutions before it are found.
+ *
+ * @author Roman Katerinenko
+ */
+final class QueryExecutor implements AutoCloseable {
+    // each worker gets about this amount of chunks, which is enough to even out uneven queries
+    private static final int CHUNKS_PER_WORKER = 8;
+    private static final int MAX_CHUNK_SIZE = 64;
+
+    // shared by executors running on the same threads
+    private final ThreadLocal<SolverSlot> solverSlots;
+    private final Supplier<QuerySolver> solverFactory;
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    QueryExecutor(Supplier<QuerySolver> solverFactory, int parallelism) {
+        this(ThreadLocal.withInitial(SolverSlot::new), solverFactory, parallelism,
+                parallelism > 1 ? new ForkJoinPool(parallelism) : null);
+    }
+
+    private QueryExecutor(ThreadLocal<SolverSlot> solverSlots, Supplier<QuerySolver> solverFactory, int parallelism,
+                          ForkJoinPool pool) {
+        this.solverSlots = solverSlots;
+        this.solverFactory = solverFactory;
+        this.parallelism = parallelism;
+        this.pool = pool;
+    }
+
+    /**
+     * @return executor running on the same threads with solvers from another factory, e.g. solvers of an updated
+     * graph. Batches already running on this executor are finished by its solvers. Only one of them is to be closed.
+     */
+    QueryExecutor withSolverFactory(Supplier<QuerySolver> solverFactory) {
+        return new QueryExecutor(solverSlots, solverFactory, parallelism, pool);
+    }
+
+    /**
+     * Solves a single query in the calling thread.
+     */
+    Solution solve(Query query) {
+        return getSolver().solve(query);
+    }
+
+    /**
+     * Solves the queries and passes their solutions to the visitor in the order of queries.
+     * Every solution is passed as soon as it and all solutions before it are found.
+     */
+    void execute(List<Query> queries, Solutions.SolutionVisitor visitor) {
+        if (pool == null || queries.size() < 2) {
+            QuerySolver solver = getSolver();
+            queries.forEach(query -> solver.solve(query).accept(visitor));
+        } else {
+            executeInParallel(queries, visitor);
+        }
+    }
+
+    /**
+     * @return solver of the calling thread made by the factory of this executor
+     */
+    private QuerySolver getSolver() {
+        SolverSlot slot = solverSlots.get();
+        if (slot.factory != solverFactory) {
+            // the former solver becomes garbage before the new one is allocated
+            slot.solver = null;
+            slot.solver = solverFactory.get();
+            slot.factory = solverFactory;
+        }
+        return slot.solver;
+    }
+
+    /**
+     * Workers publish solutions to a shared array and wake the calling thread up after every chunk,
+     * while the calling thread passes solutions to the visitor in order and forgets them.
+     */
+    private void executeInParallel(List<Query> queries, Solutions.SolutionVisitor visitor) {
+        Query[] batch = queries.toArray(new Query[queries.size()]);
+        AtomicReferenceArray<Solution> results = new AtomicReferenceArray<>(batch.length);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Object progress = new Object();
+        int chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE, batch.length / (parallelism * CHUNKS_PER_WORKER)));
+        AtomicInteger nextChunkStart = new AtomicInteger();
+        Runnable worker = () -> {
+            try {
+                QuerySolver solver = getSolver();
+                int start;
+                while ((start = nextChunkStart.getAndAdd(chunkSize)) < batch.length && failure.get() == null) {
+                    int end = Math.min(start + chunkSize, batch.length);
+                    for (int i = start; i < end; i++) {
+                        results.set(i, solver.solve(batch[i]));
+                    }
+                    synchronized (progress) {
+                        progress.notifyAll();
+                    }
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+                synchronized (progress) {
+                    progress.notifyAll();
+                }
+            }
+        };
+        int workersAmount = Math.min(parallelism, (batch.length + chunkSize - 1) / chunkSize);
+        ForkJoinTask<?>[] workers = new ForkJoinTask<?>[workersAmount];
+        for (int i = 0; i < workersAmount; i++) {
+            workers[i] = pool.submit(worker);
+        }
+        try {
+            for (int i = 0; i < batch.length; i++) {
+                Solution solution = awaitSolution(results, i, failure, progress);
+                results.set(i, null);
+                solution.accept(visitor);
+            }
+        } catch (RuntimeException | Error e) {
+            failure.compareAndSet(null, e); // makes workers stop
+            throw e;
+        } finally {
+            for (ForkJoinTask<?> task : workers) {
+                task.quietlyJoin();
+            }
+        }
+    }
+
+    private static Solution awaitSolution(AtomicReferenceArray<Solution> results, int index,
+                                          AtomicReference<Throwable> failure, Object progress) {
+        Solution solution = results.get(index);
+        if (solution != null) {
+            return solution;
+        }
+        synchronized (progress) {
+            while ((solution = results.get(index)) == null) {
+                Throwable e = failure.get();
+                if (e != null) {
+                    throw new IllegalStateException("Unable to solve queries", e);
+                }
+                try {
+                    progress.wait();
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while solving queries", interrupted);
+                }
+            }
+        }
+        return solution;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Solver of a thread and the factory it was made by.
+     */
+    private static final class SolverSlot {
+        private Supplier<QuerySolver> factory;
+        private QuerySolver solver;
+    }
+}
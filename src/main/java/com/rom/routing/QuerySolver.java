@@ -0,0 +1,75 @@
+package com.rom.routing;
+
+import com.rom.routing.core.MatrixQuery;
+import com.rom.routing.core.NearbyQuery;
+import com.rom.routing.core.PathQuery;
+import com.rom.routing.core.Query;
+import com.rom.routing.core.QueryVisitor;
+import com.rom.routing.core.Solution;
+
+/**
+ * Base class of query solvers. It turns visiting of a {@link Query} into a call returning its {@link Solution}
+ * ({@link #solve(Query)}), so a caller decides where solutions go.
+ * <p>
+ * Note! Solvers keep search state between queries to avoid allocating it per query,
+ * so an instance must be used by one thread at a time.
+ *
+ * @author Roman Katerinenko
+ * @see QueryExecutor
+ */
+abstract class QuerySolver implements QueryVisitor {
+    // effort of searches of the current query, subclasses count it and it's passed to metrics per query
+    long settledVertices;
+    long relaxedEdges;
+    long heapOperations;
+    long cacheHits;
+
+    private Solution solution;
+    private RoutingMetrics metrics;
+
+    /**
+     * @return solution of the query, never null
+     */
+    Solution solve(Query query) {
+        query.accept(this);
+        Solution result = solution;
+        solution = null;
+        if (metrics != null) {
+            metrics.addQuery(settledVertices, relaxedEdges, heapOperations, cacheHits);
+        }
+        settledVertices = 0;
+        relaxedEdges = 0;
+        heapOperations = 0;
+        cacheHits = 0;
+        return result;
+    }
+
+    /**
+     * @param metrics metrics every solved query is recorded to, null means no recording
+     */
+    QuerySolver withMetrics(RoutingMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    @Override
+    public final void visit(PathQuery pathQuery) {
+        solution = solvePath(pathQuery);
+    }
+
+    @Override
+    public final void visit(NearbyQuery nearbyQuery) {
+        solution = solveNearby(nearbyQuery);
+    }
+
+    @Override
+    public final void visit(MatrixQuery matrixQuery) {
+        solution = solveMatrix(matrixQuery);
+    }
+
+    abstract Solution solvePath(PathQuery pathQuery);
+
+    abstract Solution solveNearby(NearbyQuery nearbyQuery);
+
+    abstract Solution solveMatrix(MatrixQuery matrixQuery);
+}
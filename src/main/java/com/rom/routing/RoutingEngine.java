@@ -0,0 +1,292 @@
+package com.rom.routing;
+
+import com.rom.routing.RoutingMetrics.Stage;
+import com.rom.routing.core.EmptyNearbySolution;
+import com.rom.routing.core.EmptyRouteSolution;
+import com.rom.routing.core.MatrixSolution;
+import com.rom.routing.core.NearbySolution;
+import com.rom.routing.core.PathSolution;
+import com.rom.routing.core.PathTask;
+import com.rom.routing.core.Query;
+import com.rom.routing.core.Solution;
+import com.rom.routing.core.Solutions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Resident graph answering queries for as long as it's needed, so the graph is built or mapped once
+ * rather than per task description. It's the API for embedding the service, {@link RoutingService} uses it too.
+ * <p>
+ * The engine is thread-safe: every thread querying it gets its own solver, while the graph,
+ * the cache of shortest-path trees and preprocessed data (contraction hierarchy, landmarks or distance table),
+ * if any, are shared. A distance table is built for small graphs unless another way of answering path queries
+ * is chosen. The graph can be changed by {@link #update(GraphUpdate)} while queries are answered.
+ * <p>
+ * With {@link RoutingOptions#isMetrics()} on, the engine collects {@link RoutingMetrics} of everything it does
+ * and registers them as an MBean for as long as it's open.
+ *
+ * @author Roman Katerinenko
+ * @see RoutingOptions
+ */
+public final class RoutingEngine implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RoutingEngine.class);
+    private static final AtomicInteger engineIds = new AtomicInteger();
+
+    private final RoutingOptions options;
+    // null when metrics are off
+    private final RoutingMetrics metrics;
+    private final ObjectName metricsName;
+    // threads of delta-stepping searches shared by all solvers, null if searches are sequential
+    private final ForkJoinPool searchPool;
+    private volatile Graph graph;
+    private volatile QueryExecutor executor;
+    // data of the current graph, the one chosen by options is not null
+    private ShortestPathTreeCache treeCache;
+    private ContractionHierarchy hierarchy;
+    private Landmarks landmarks;
+    private DistanceTable distanceTable;
+
+    RoutingEngine(Graph graph, RoutingOptions options) {
+        this(graph, options, true);
+    }
+
+    /**
+     * @param distanceTableAllowed false if there are too few queries for a distance table to pay off
+     */
+    RoutingEngine(Graph graph, RoutingOptions options, boolean distanceTableAllowed) {
+        this.options = options;
+        this.graph = graph;
+        this.metrics = options.isMetrics() ? new RoutingMetrics() : null;
+        this.metricsName = metrics != null ? registerMetrics(metrics) : null;
+        this.searchPool = options.isDeltaStepping() && options.getParallelism() > 1
+                ? new ForkJoinPool(options.getParallelism()) : null;
+        this.treeCache = new ShortestPathTreeCache(options.getTreeCacheCapacity());
+        long start = System.nanoTime();
+        if (options.isContractionHierarchies()) {
+            hierarchy = new ContractionHierarchyBuilder(graph).build();
+        } else if (options.getLandmarksAmount() > 0) {
+            landmarks = new LandmarksBuilder(graph, options.getLandmarksAmount()).build();
+        } else if (distanceTableAllowed && !options.isBidirectionalSearch()
+                && DistanceTable.isAffordable(graph.getVertexCount(), options.getDistanceTableMaxStations())) {
+            distanceTable = new DistanceTableBuilder(graph, options).build();
+        }
+        recordStage(Stage.PREPROCESSING, System.nanoTime() - start);
+        this.executor = new QueryExecutor(newSolverFactory(), options.getParallelism());
+    }
+
+    /**
+     * @param pathTask paths of the graph, queries of the task are ignored
+     */
+    public static RoutingEngine create(PathTask pathTask, RoutingOptions options) {
+        long start = System.nanoTime();
+        Graph graph = new GraphBuilder(pathTask, options).build();
+        long buildNanos = System.nanoTime() - start;
+        RoutingEngine engine = new RoutingEngine(graph, options);
+        engine.recordStage(Stage.GRAPH_BUILD, buildNanos);
+        return engine;
+    }
+
+    /**
+     * @param snapshot graph snapshot written by {@link RoutingService#writeGraphSnapshot(java.io.InputStream, File)}
+     * @throws IOException if the snapshot can't be read
+     */
+    public static RoutingEngine open(File snapshot, RoutingOptions options) throws IOException {
+        long start = System.nanoTime();
+        Graph graph = GraphSnapshot.open(snapshot);
+        long openNanos = System.nanoTime() - start;
+        RoutingEngine engine = new RoutingEngine(graph, options);
+        engine.recordStage(Stage.GRAPH_BUILD, openNanos);
+        return engine;
+    }
+
+    public int getStationsAmount() {
+        return graph.getVertexCount();
+    }
+
+    /**
+     * Solves the query in the calling thread.
+     */
+    public Solution query(Query query) {
+        if (metrics == null) {
+            return executor.solve(query);
+        }
+        long start = System.nanoTime();
+        Solution solution = executor.solve(query);
+        metrics.addStageTime(Stage.SEARCH, System.nanoTime() - start);
+        return solution;
+    }
+
+    /**
+     * Solves the batch of queries with {@link RoutingOptions#getParallelism()} threads and passes solutions
+     * to the visitor in the order of queries, each one as soon as it and all solutions before it are found.
+     */
+    public void query(List<Query> queries, Solutions.SolutionVisitor visitor) {
+        if (metrics == null) {
+            executor.execute(queries, visitor);
+            return;
+        }
+        TimedVisitor timedVisitor = new TimedVisitor(visitor);
+        long start = System.nanoTime();
+        executor.execute(queries, timedVisitor);
+        long batchNanos = System.nanoTime() - start;
+        metrics.addStageTime(Stage.OUTPUT, timedVisitor.nanos);
+        metrics.addStageTime(Stage.SEARCH, batchNanos - timedVisitor.nanos);
+    }
+
+    /**
+     * @return metrics of the engine or null if {@link RoutingOptions#isMetrics()} is off
+     */
+    public RoutingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Adds time of a stage done outside of the engine, e.g. parsing, to its metrics if they are on.
+     */
+    void recordStage(Stage stage, long nanos) {
+        if (metrics != null) {
+            metrics.addStageTime(stage, nanos);
+        }
+    }
+
+    /**
+     * Applies the update to a copy of the graph and switches queries to it. Queries being answered meanwhile
+     * are answered over the graph before the update. Data of the graph is kept as far as the update allows:
+     * cached shortest-path trees and rows of the distance table the update doesn't affect are kept, the rest are
+     * built again, landmarks are kept unless a travel time decreases. A contraction hierarchy is built again.
+     * Adding stations makes all the data built again.
+     */
+    public synchronized void update(GraphUpdate update) {
+        if (update.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        GraphUpdater updater = new GraphUpdater(graph, update);
+        Graph updatedGraph = updater.build();
+        if (options.isOffHeap()) {
+            updatedGraph = BufferGraph.copyOffHeap(updatedGraph);
+        }
+        treeCache = updater.isStationsAdded()
+                ? new ShortestPathTreeCache(options.getTreeCacheCapacity())
+                : treeCache.copyWithout(updater::affects);
+        if (hierarchy != null) {
+            hierarchy = new ContractionHierarchyBuilder(updatedGraph).build();
+        }
+        if (landmarks != null && (updater.isStationsAdded() || updater.isAnyTravelTimeDecreased())) {
+            landmarks = new LandmarksBuilder(updatedGraph, options.getLandmarksAmount()).build();
+        }
+        if (distanceTable != null) {
+            DistanceTableBuilder builder = new DistanceTableBuilder(updatedGraph, options);
+            distanceTable = updater.isStationsAdded() ? builder.build() : builder.update(distanceTable, updater);
+        }
+        graph = updatedGraph;
+        executor = executor.withSolverFactory(newSolverFactory());
+        recordStage(Stage.PREPROCESSING, System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+        if (searchPool != null) {
+            searchPool.shutdown();
+        }
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                logger.warn("Unable to unregister metrics MBean", e);
+            }
+        }
+    }
+
+    private Supplier<QuerySolver> newSolverFactory() {
+        Graph graph = this.graph;
+        ShortestPathTreeCache treeCache = this.treeCache;
+        ContractionHierarchy hierarchy = this.hierarchy;
+        Landmarks landmarks = this.landmarks;
+        DistanceTable distanceTable = this.distanceTable;
+        Supplier<QuerySolver> solverFactory;
+        if (hierarchy != null) {
+            solverFactory = () -> new ContractionHierarchyQuerySolver(graph, hierarchy, options, treeCache);
+        } else if (landmarks != null) {
+            solverFactory = () -> new LandmarkQuerySolver(graph, landmarks, options, treeCache);
+        } else if (distanceTable != null) {
+            solverFactory = () -> new DijkstraQuerySolver(graph, options, distanceTable);
+        } else if (options.isDeltaStepping()) {
+            solverFactory = () -> new DeltaSteppingQuerySolver(graph, options, treeCache, searchPool);
+        } else {
+            solverFactory = () -> new DijkstraQuerySolver(graph, options, treeCache);
+        }
+        return metrics == null ? solverFactory : () -> solverFactory.get().withMetrics(metrics);
+    }
+
+    private static ObjectName registerMetrics(RoutingMetrics metrics) {
+        try {
+            ObjectName name = new ObjectName("com.rom.routing:type=RoutingMetrics,name=engine-"
+                    + engineIds.incrementAndGet());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            return name;
+        } catch (JMException e) {
+            logger.warn("Unable to register metrics MBean", e);
+            return null;
+        }
+    }
+
+    /**
+     * Passes solutions on and sums time the visitor takes, which is output time of a batch.
+     * Solutions of a batch are visited by the calling thread only.
+     */
+    private static final class TimedVisitor implements Solutions.SolutionVisitor {
+        private final Solutions.SolutionVisitor visitor;
+        private long nanos;
+
+        private TimedVisitor(Solutions.SolutionVisitor visitor) {
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void visit(PathSolution pathSolution) {
+            long start = System.nanoTime();
+            visitor.visit(pathSolution);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void visit(EmptyRouteSolution emptyRouteSolution) {
+            long start = System.nanoTime();
+            visitor.visit(emptyRouteSolution);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void visit(NearbySolution nearbySolution) {
+            long start = System.nanoTime();
+            visitor.visit(nearbySolution);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void visit(EmptyNearbySolution emptyNearbySolution) {
+            long start = System.nanoTime();
+            visitor.visit(emptyNearbySolution);
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void visit(MatrixSolution matrixSolution) {
+            long start = System.nanoTime();
+            visitor.visit(matrixSolution);
+            nanos += System.nanoTime() - start;
+        }
+    }
+}
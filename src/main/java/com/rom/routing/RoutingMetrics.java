@@ -0,0 +1,136 @@
+package com.rom.routing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time spent in every stage of answering queries and effort of searches summed over all queries of
+ * a {@link RoutingEngine}. It's collected only when {@link RoutingOptions#isMetrics()} is on, see
+ * {@link RoutingEngine#getMetrics()}; the engine also registers it as a JMX MBean ({@link RoutingMetricsMBean}).
+ * <p>
+ * Searches count their effort in plain fields of a solver, which passes them here once per query,
+ * so threads solving queries don't contend and nothing is passed when metrics are off.
+ * Search time of a batch excludes the time its visitor takes, which is output time.
+ *
+ * @author Roman Katerinenko
+ */
+public final class RoutingMetrics implements RoutingMetricsMBean {
+    public enum Stage {PARSE, GRAPH_BUILD, PREPROCESSING, SEARCH, OUTPUT}
+
+    private final LongAdder[] stageNanos = new LongAdder[Stage.values().length];
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder settledVertices = new LongAdder();
+    private final LongAdder relaxedEdges = new LongAdder();
+    private final LongAdder heapOperations = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+
+    RoutingMetrics() {
+        for (int i = 0; i < stageNanos.length; i++) {
+            stageNanos[i] = new LongAdder();
+        }
+    }
+
+    void addStageTime(Stage stage, long nanos) {
+        stageNanos[stage.ordinal()].add(nanos);
+    }
+
+    /**
+     * Records a solved query and effort of the searches it took.
+     */
+    void addQuery(long settledVertices, long relaxedEdges, long heapOperations, long cacheHits) {
+        queries.increment();
+        this.settledVertices.add(settledVertices);
+        this.relaxedEdges.add(relaxedEdges);
+        this.heapOperations.add(heapOperations);
+        this.cacheHits.add(cacheHits);
+    }
+
+    public long getStageMillis(Stage stage) {
+        return TimeUnit.NANOSECONDS.toMillis(stageNanos[stage.ordinal()].sum());
+    }
+
+    @Override
+    public long getParseMillis() {
+        return getStageMillis(Stage.PARSE);
+    }
+
+    @Override
+    public long getGraphBuildMillis() {
+        return getStageMillis(Stage.GRAPH_BUILD);
+    }
+
+    @Override
+    public long getPreprocessingMillis() {
+        return getStageMillis(Stage.PREPROCESSING);
+    }
+
+    @Override
+    public long getSearchMillis() {
+        return getStageMillis(Stage.SEARCH);
+    }
+
+    @Override
+    public long getOutputMillis() {
+        return getStageMillis(Stage.OUTPUT);
+    }
+
+    @Override
+    public long getQueries() {
+        return queries.sum();
+    }
+
+    /**
+     * @return amount of vertices taken from the heap by searches
+     */
+    @Override
+    public long getSettledVertices() {
+        return settledVertices.sum();
+    }
+
+    /**
+     * @return amount of edges scanned by searches
+     */
+    @Override
+    public long getRelaxedEdges() {
+        return relaxedEdges.sum();
+    }
+
+    /**
+     * @return amount of inserts, decreases and polls of heaps of searches
+     */
+    @Override
+    public long getHeapOperations() {
+        return heapOperations.sum();
+    }
+
+    /**
+     * @return amount of queries answered by a cached shortest-path tree or a distance table without searching
+     */
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder stage : stageNanos) {
+            stage.reset();
+        }
+        queries.reset();
+        settledVertices.reset();
+        relaxedEdges.reset();
+        heapOperations.reset();
+        cacheHits.reset();
+    }
+
+    /**
+     * @return one line of all metrics, e.g. for a log
+     */
+    public String summary() {
+        return "parse " + getParseMillis() + " ms, graph build " + getGraphBuildMillis()
+                + " ms, preprocessing " + getPreprocessingMillis() + " ms, search " + getSearchMillis()
+                + " ms, output " + getOutputMillis() + " ms; " + getQueries() + " queries, "
+                + getSettledVertices() + " settled vertices, " + getRelaxedEdges() + " relaxed edges, "
+                + getHeapOperations() + " heap operations, " + getCacheHits() + " cache hits";
+    }
+}
@@ -0,0 +1,30 @@
+package com.rom.routing;
+
+/**
+ * JMX view of {@link RoutingMetrics}, registered as {@code com.rom.routing:type=RoutingMetrics,name=engine-N}.
+ *
+ * @author Roman Katerinenko
+ */
+public interface RoutingMetricsMBean {
+    long getParseMillis();
+
+    long getGraphBuildMillis();
+
+    long getPreprocessingMillis();
+
+    long getSearchMillis();
+
+    long getOutputMillis();
+
+    long getQueries();
+
+    long getSettledVertices();
+
+    long getRelaxedEdges();
+
+    long getHeapOperations();
+
+    long getCacheHits();
+
+    void reset();
+}
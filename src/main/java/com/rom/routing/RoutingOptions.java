@@ -0,0 +1,373 @@
+package com.rom.routing;
+
+import java.io.File;
+
+/**
+ * Tuning knobs of {@link RoutingService}. Defaults are suitable for small and medium graphs,
+ * so {@link RoutingService#findPath(java.io.InputStream, java.io.OutputStream)} uses them as is.
+ * <p>
+ * Options can be given on the command line ({@link #parse(String...)}) as {@code --name=value} or
+ * just {@code --name} for boolean ones.
+ *
+ * @author Roman Katerinenko
+ */
+public final class RoutingOptions {
+    private static final String HEAP_ARITY = "--heap-arity";
+    private static final String BIDIRECTIONAL = "--bidirectional";
+    private static final String PARALLELISM = "--parallelism";
+    private static final String TREE_CACHE = "--tree-cache";
+    private static final String GRAPH_SNAPSHOT = "--graph-snapshot";
+    private static final String WRITE_SNAPSHOT = "--write-snapshot";
+    private static final String SERVER = "--server";
+    private static final String PORT = "--port";
+    private static final String CONTRACTION_HIERARCHIES = "--contraction-hierarchies";
+    private static final String LANDMARKS = "--landmarks";
+    private static final String DISTANCE_TABLE = "--distance-table";
+    private static final String METRICS = "--metrics";
+    private static final String BUCKET_QUEUE = "--bucket-queue";
+    private static final String DELTA_STEPPING = "--delta-stepping";
+    private static final String REORDER_VERTICES = "--reorder-vertices";
+    private static final String OFF_HEAP = "--off-heap";
+
+    private int heapArity = IndexedMinHeap.DEFAULT_ARITY;
+    private boolean bidirectionalSearch;
+    private int parallelism = 1;
+    private int treeCacheCapacity = 8;
+    private File graphSnapshot;
+    private File snapshotToWrite;
+    private boolean server;
+    private int port;
+    private boolean contractionHierarchies;
+    private int landmarksAmount;
+    private int distanceTableMaxStations = 512;
+    private boolean metrics;
+    private boolean bucketQueue;
+    private boolean deltaStepping;
+    private boolean vertexReordering;
+    private boolean offHeap;
+
+    /**
+     * @throws IllegalArgumentException if any argument is unknown or has wrong value
+     */
+    public static RoutingOptions parse(String... args) {
+        RoutingOptions options = new RoutingOptions();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            String name = separator < 0 ? arg : arg.substring(0, separator);
+            String value = separator < 0 ? null : arg.substring(separator + 1);
+            switch (name) {
+                case HEAP_ARITY:
+                    options.setHeapArity(parseInt(name, value));
+                    break;
+                case BIDIRECTIONAL:
+                    options.setBidirectionalSearch(value == null || Boolean.parseBoolean(value));
+                    break;
+                case PARALLELISM:
+                    options.setParallelism(parseInt(name, value));
+                    break;
+                case TREE_CACHE:
+                    options.setTreeCacheCapacity(parseInt(name, value));
+                    break;
+                case GRAPH_SNAPSHOT:
+                    options.setGraphSnapshot(parseFile(name, value));
+                    break;
+                case WRITE_SNAPSHOT:
+                    options.setSnapshotToWrite(parseFile(name, value));
+                    break;
+                case SERVER:
+                    options.setServer(value == null || Boolean.parseBoolean(value));
+                    break;
+                case PORT:
+                    options.setPort(parseInt(name, value));
+                    break;
+                case CONTRACTION_HIERARCHIES:
+                    options.setContractionHierarchies(value == null || Boolean.parseBoolean(value));
+                    break;
+                case LANDMARKS:
+                    options.setLandmarksAmount(parseInt(name, value));
+                    break;
+                case DISTANCE_TABLE:
+                    options.setDistanceTableMaxStations(parseInt(name, value));
+                    break;
+                case METRICS:
+                    options.setMetrics(value == null || Boolean.parseBoolean(value));
+                    break;
+                case BUCKET_QUEUE:
+                    options.setBucketQueue(value == null || Boolean.parseBoolean(value));
+                    break;
+                case DELTA_STEPPING:
+                    options.setDeltaStepping(value == null || Boolean.parseBoolean(value));
+                    break;
+                case REORDER_VERTICES:
+                    options.setVertexReordering(value == null || Boolean.parseBoolean(value));
+                    break;
+                case OFF_HEAP:
+                    options.setOffHeap(value == null || Boolean.parseBoolean(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        return options;
+    }
+
+    public int getHeapArity() {
+        return heapArity;
+    }
+
+    /**
+     * @param heapArity amount of children of a node in the MIN-HEAP used by searches, at least 2
+     */
+    public RoutingOptions setHeapArity(int heapArity) {
+        if (heapArity < 2) {
+            throw new IllegalArgumentException("Heap arity must be at least 2, but was " + heapArity);
+        }
+        this.heapArity = heapArity;
+        return this;
+    }
+
+    public boolean isBucketQueue() {
+        return bucketQueue;
+    }
+
+    /**
+     * @param bucketQueue whether Dijkstra searches take vertices from a {@link BucketQueue} instead of the MIN-HEAP,
+     *                    which makes every queue operation O(1). It's used only if the max travel time of a route
+     *                    is less than {@link BucketQueue#MAX_BUCKETS}. Searches of contraction hierarchies and
+     *                    landmarks always use the MIN-HEAP, since their keys (shortcut weights, travel times plus
+     *                    lower bounds) aren't bounded by the max travel time of a route.
+     */
+    public RoutingOptions setBucketQueue(boolean bucketQueue) {
+        this.bucketQueue = bucketQueue;
+        return this;
+    }
+
+    public boolean isDeltaStepping() {
+        return deltaStepping;
+    }
+
+    /**
+     * @param deltaStepping whether nearby queries are answered by {@link DeltaSteppingQuerySolver}, which relaxes
+     *                      edges of a query on {@link #getParallelism()} threads, so a single query over a large graph
+     *                      is answered faster. Other ways of answering queries take precedence over it.
+     */
+    public RoutingOptions setDeltaStepping(boolean deltaStepping) {
+        this.deltaStepping = deltaStepping;
+        return this;
+    }
+
+    public boolean isVertexReordering() {
+        return vertexReordering;
+    }
+
+    /**
+     * @param vertexReordering whether the built graph gets vertex ids by {@link VertexReordering}, so stations close
+     *                         in the network are close in memory and searches over large graphs miss the cache less.
+     *                         Solutions stay the same, but the graph takes longer to build.
+     */
+    public RoutingOptions setVertexReordering(boolean vertexReordering) {
+        this.vertexReordering = vertexReordering;
+        return this;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @param offHeap whether the built graph is copied to direct buffers ({@link BufferGraph#copyOffHeap(Graph)}),
+     *                so a large graph takes little heap once it's built and collections don't scan or move it.
+     *                A graph opened from a snapshot is off the heap anyway.
+     */
+    public RoutingOptions setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+        return this;
+    }
+
+    public boolean isBidirectionalSearch() {
+        return bidirectionalSearch;
+    }
+
+    /**
+     * @param bidirectionalSearch whether path queries are answered by bidirectional Dijkstra.
+     *                            It requires reverse edges, which doubles the memory taken by edges.
+     */
+    public RoutingOptions setBidirectionalSearch(boolean bidirectionalSearch) {
+        this.bidirectionalSearch = bidirectionalSearch;
+        return this;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism amount of threads solving queries of a batch, 1 means solving them in the calling thread.
+     *                    Graphs of large tasks and distance tables are built by that many threads too.
+     */
+    public RoutingOptions setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getTreeCacheCapacity() {
+        return treeCacheCapacity;
+    }
+
+    /**
+     * @param treeCacheCapacity max amount of complete shortest-path trees kept for stations which are sources of
+     *                          several queries, 0 turns caching off. A tree takes 12 bytes per vertex.
+     */
+    public RoutingOptions setTreeCacheCapacity(int treeCacheCapacity) {
+        if (treeCacheCapacity < 0) {
+            throw new IllegalArgumentException("Tree cache capacity must not be negative, but was " + treeCacheCapacity);
+        }
+        this.treeCacheCapacity = treeCacheCapacity;
+        return this;
+    }
+
+    public File getGraphSnapshot() {
+        return graphSnapshot;
+    }
+
+    /**
+     * @param graphSnapshot snapshot of the graph written before (see {@link #setSnapshotToWrite(File)}),
+     *                      then the task description contains queries only. Null means reading the graph
+     *                      from the task description.
+     */
+    public RoutingOptions setGraphSnapshot(File graphSnapshot) {
+        this.graphSnapshot = graphSnapshot;
+        return this;
+    }
+
+    public File getSnapshotToWrite() {
+        return snapshotToWrite;
+    }
+
+    /**
+     * @param snapshotToWrite file {@link RoutingService#main(String[])} writes a snapshot of the graph from
+     *                        the task description to instead of solving queries, null means solving queries
+     */
+    public RoutingOptions setSnapshotToWrite(File snapshotToWrite) {
+        this.snapshotToWrite = snapshotToWrite;
+        return this;
+    }
+
+    /**
+     * @return true if {@link RoutingService#main(String[])} serves queries as they come
+     * ({@link RoutingService#serve(java.io.InputStream, java.io.OutputStream, RoutingOptions)})
+     */
+    public boolean isServer() {
+        return server || port != 0;
+    }
+
+    public RoutingOptions setServer(boolean server) {
+        this.server = server;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @param port local port the server takes queries from, 0 means taking them from the task description.
+     *             A port turns the server mode on.
+     */
+    public RoutingOptions setPort(int port) {
+        if (port < 0 || port > 0xFFFF) {
+            throw new IllegalArgumentException("Port must be in range [0, 65535], but was " + port);
+        }
+        this.port = port;
+        return this;
+    }
+
+    public boolean isContractionHierarchies() {
+        return contractionHierarchies;
+    }
+
+    /**
+     * @param contractionHierarchies whether path queries are answered with a contraction hierarchy of the graph.
+     *                               Building it takes time and memory once, then path queries are much faster.
+     *                               It takes precedence over other ways of answering path queries.
+     */
+    public RoutingOptions setContractionHierarchies(boolean contractionHierarchies) {
+        this.contractionHierarchies = contractionHierarchies;
+        return this;
+    }
+
+    public int getLandmarksAmount() {
+        return landmarksAmount;
+    }
+
+    /**
+     * @param landmarksAmount amount of landmarks for A* search of path queries (ALT), 0 turns it off.
+     *                        Landmarks take two searches over the graph and 8 bytes per vertex each,
+     *                        and require reverse edges. Contraction hierarchies take precedence over them.
+     */
+    public RoutingOptions setLandmarksAmount(int landmarksAmount) {
+        if (landmarksAmount < 0) {
+            throw new IllegalArgumentException("Amount of landmarks must not be negative, but was " + landmarksAmount);
+        }
+        this.landmarksAmount = landmarksAmount;
+        return this;
+    }
+
+    public int getDistanceTableMaxStations() {
+        return distanceTableMaxStations;
+    }
+
+    /**
+     * @param distanceTableMaxStations max amount of stations of a graph all queries of which are answered by
+     *                                 a precomputed table of travel times between all pairs of stations, 0 turns
+     *                                 it off. The table takes a search per station and 12 bytes per pair of stations,
+     *                                 it's built only if it takes at most a quarter of the max heap size.
+     *                                 Other ways of answering path queries take precedence over it.
+     */
+    public RoutingOptions setDistanceTableMaxStations(int distanceTableMaxStations) {
+        if (distanceTableMaxStations < 0) {
+            throw new IllegalArgumentException("Distance table stations limit must not be negative, but was "
+                    + distanceTableMaxStations);
+        }
+        this.distanceTableMaxStations = distanceTableMaxStations;
+        return this;
+    }
+
+    public boolean isMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @param metrics whether time of every stage and effort of searches are collected ({@link RoutingMetrics}),
+     *                exposed over JMX and logged at the end of a task. Off, they cost next to nothing.
+     */
+    public RoutingOptions setMetrics(boolean metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * @return true if searches of these options need reverse edges of the graph
+     */
+    boolean isReverseEdgesRequired() {
+        return bidirectionalSearch || landmarksAmount > 0;
+    }
+
+    private static File parseFile(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Option " + name + " requires a file name");
+        }
+        return new File(value);
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option " + name + " requires an integer value, but was " + value);
+        }
+    }
+}
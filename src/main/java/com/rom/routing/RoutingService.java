@@ -2,22 +2,38 @@ package com.rom.routing;
 
 import com.rom.routing.core.PathSolution;
 import com.rom.routing.core.PathTask;
-import com.rom.routing.core.Solutions;
+import com.rom.routing.core.Query;
 import com.rom.routing.io.SolutionsWriter;
 import com.rom.routing.io.TaskParser;
+import com.rom.routing.io.TaskReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
 
 /**
- * Stateless class representing entry point to the service ({@link #findPath(InputStream, OutputStream)}).
- * writing formatted solution ({@link PathSolution}) to output.
+ * Entry point to the service. {@link #findPath(InputStream, OutputStream)} solves a whole task description,
+ * writing formatted solutions ({@link PathSolution}) to output, and keeps nothing between calls.
  * <p>
  * It doesn't distinguish types of error, just outputs {@link #WRONG_INPUT_ERROR_MESSAGE}.
+ * <p>
+ * The way queries are solved can be tuned with {@link RoutingOptions}, which {@link #main(String[])} takes from
+ * the command line.
+ * <p>
+ * A graph which is queried many times can be converted to a binary snapshot once
+ * ({@link #writeGraphSnapshot(InputStream, File)}), then {@link RoutingOptions#setGraphSnapshot(File)} makes
+ * the service map the snapshot instead of parsing and building the graph.
+ * <p>
+ * {@link #serve(InputStream, OutputStream, RoutingOptions)} runs a resident {@link RoutingEngine} over the graph
+ * instead and answers queries as they come: lines of its input or, with {@link RoutingOptions#getPort()},
+ * connections to a socket. Embedding code can use {@link RoutingEngine} directly.
  *
  * @author Roman Katerinenko
  * @see PathSolution
@@ -34,43 +50,163 @@ public final class RoutingService {
     private RoutingService() {
     }
 
-    public static void main(String[] args) throws UnsupportedEncodingException {
-        RoutingService.findPath(System.in, System.out);
+    public static void main(String[] args) throws IOException {
+        RoutingOptions options = RoutingOptions.parse(args);
+        if (options.getSnapshotToWrite() != null) {
+            if (!writeGraphSnapshot(System.in, options.getSnapshotToWrite())) {
+                System.out.write(WRONG_INPUT_ERROR_MESSAGE.getBytes(CHARSET));
+                System.out.flush();
+            }
+        } else if (options.isServer()) {
+            RoutingService.serve(System.in, System.out, options);
+        } else {
+            RoutingService.findPath(System.in, System.out, options);
+        }
     }
 
     public static void findPath(InputStream taskDescription, OutputStream outputStream) {
+        findPath(taskDescription, outputStream, new RoutingOptions());
+    }
+
+    public static void findPath(InputStream taskDescription, OutputStream outputStream, RoutingOptions options) {
+        boolean fromSnapshot = options.getGraphSnapshot() != null;
+        long parseStart = System.nanoTime();
+        PathTask pathTask = fromSnapshot ? TaskParser.parseQueries(taskDescription) : TaskParser.parse(taskDescription);
+        long parseNanos = System.nanoTime() - parseStart;
+        SolutionsWriter writer = new SolutionsWriter(outputStream);
+        try (RoutingEngine engine = pathTask != null ? createEngine(pathTask, options, false, parseNanos) : null) {
+            if (engine == null) {
+                writer.writeLine(WRONG_INPUT_ERROR_MESSAGE);
+            } else if (pathTask.getQueries().isEmpty()) {
+                writer.writeLine(NO_SOLUTIONS_MESSAGE);
+            } else {
+                engine.query(pathTask.getQueries(), writer);
+            }
+            writer.flush();
+            logMetrics(engine);
+        } catch (UncheckedIOException e) {
+            logger.error("Unable to write result", e);
+        }
+    }
+
+    /**
+     * Long-running alternative of {@link #findPath(InputStream, OutputStream, RoutingOptions)}. It reads paths
+     * (unless the graph is a snapshot) and then answers queries one line at a time: every query line gets a line
+     * of solution, which is flushed right away. A wrong query line gets {@link #WRONG_INPUT_ERROR_MESSAGE}.
+     * <p>
+     * If {@link RoutingOptions#getPort()} is set, queries come from connections to that port of the loopback
+     * interface instead of the task description, every connection is served by its own thread until it's closed.
+     * Then the method doesn't return.
+     */
+    public static void serve(InputStream taskDescription, OutputStream outputStream, RoutingOptions options)
+            throws IOException {
+        try (TaskReader reader = new TaskReader(taskDescription)) {
+            long parseStart = System.nanoTime();
+            PathTask pathTask = options.getGraphSnapshot() == null ? reader.readPaths() : new PathTask();
+            long parseNanos = System.nanoTime() - parseStart;
+            try (RoutingEngine engine = pathTask != null ? createEngine(pathTask, options, true, parseNanos) : null) {
+                if (engine == null) {
+                    SolutionsWriter writer = new SolutionsWriter(outputStream, true);
+                    writer.writeLine(WRONG_INPUT_ERROR_MESSAGE);
+                    writer.flush();
+                } else if (options.getPort() == 0) {
+                    answerQueries(reader, engine, outputStream);
+                    logMetrics(engine);
+                } else {
+                    listen(engine, options.getPort());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the graph of the task description, queries of the description are ignored.
+     * The snapshot keeps reverse edges, so it suits any {@link RoutingOptions}.
+     *
+     * @return false if the task description is wrong or the snapshot can't be written
+     */
+    public static boolean writeGraphSnapshot(InputStream taskDescription, File snapshot) {
         PathTask pathTask = TaskParser.parse(taskDescription);
-        String resultString;
-        if (pathTask != null) {
-            Solutions solutions = solve(pathTask);
-            resultString = describe(solutions);
-        } else {
-            resultString = WRONG_INPUT_ERROR_MESSAGE;
+        if (pathTask == null) {
+            return false;
         }
         try {
-            outputStream.write(resultString.getBytes(CHARSET));
-        } catch (IOException e) {
-            logger.error("Unable to write result", e);
+            GraphSnapshot.write(new GraphBuilder(pathTask, true).build(), snapshot);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.error("Unable to write graph snapshot " + snapshot, e);
+            return false;
+        }
+    }
+
+    private static void answerQueries(TaskReader reader, RoutingEngine engine, OutputStream outputStream)
+            throws IOException {
+        SolutionsWriter writer = new SolutionsWriter(outputStream, true);
+        while (reader.hasNextQuery()) {
+            Query query = reader.readQuery();
+            if (query != null) {
+                engine.query(query).accept(writer);
+            } else {
+                writer.writeLine(WRONG_INPUT_ERROR_MESSAGE);
+            }
+            writer.flush();
         }
     }
 
-    private static Solutions solve(PathTask pathTask) {
-        DijkstraQuerySolver querySolver = new DijkstraQuerySolver(createGraphFor(pathTask));
-        pathTask.runQueryVisitor(querySolver);
-        return querySolver.getSolutions();
+    private static void listen(RoutingEngine engine, int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            logger.info("Serving queries on {}", serverSocket.getLocalSocketAddress());
+            while (true) {
+                Socket socket = serverSocket.accept();
+                Thread connectionThread = new Thread(() -> serveConnection(socket, engine),
+                        "routing-connection-" + socket.getPort());
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            }
+        }
     }
 
-    private static Graph createGraphFor(PathTask pathTask) {
-        return new GraphBuilder(pathTask).build();
+    private static void serveConnection(Socket socket, RoutingEngine engine) {
+        try (Socket connection = socket;
+             TaskReader reader = new TaskReader(connection.getInputStream())) {
+            answerQueries(reader, engine, connection.getOutputStream());
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Connection " + socket.getRemoteSocketAddress() + " is broken", e);
+        }
     }
 
-    private static String describe(Solutions solutions) {
-        if (solutions != null && !solutions.isEmpty()) {
-            SolutionsWriter visitor = new SolutionsWriter();
-            solutions.runSolutionVisitor(visitor);
-            return visitor.getString();
+    /**
+     * @param longRunning whether the engine answers queries yet to come rather than just the queries of the task
+     * @param parseNanos  time the task description took to parse, for metrics
+     * @return null if the graph snapshot can't be opened
+     */
+    private static RoutingEngine createEngine(PathTask pathTask, RoutingOptions options, boolean longRunning,
+                                              long parseNanos) {
+        File snapshot = options.getGraphSnapshot();
+        long buildStart = System.nanoTime();
+        Graph graph;
+        if (snapshot == null) {
+            graph = new GraphBuilder(pathTask, options).build();
         } else {
-            return NO_SOLUTIONS_MESSAGE;
+            try {
+                graph = GraphSnapshot.open(snapshot);
+            } catch (IOException e) {
+                logger.error("Unable to open graph snapshot " + snapshot, e);
+                return null;
+            }
+        }
+        // a distance table takes a search per station, so a batch of fewer queries is answered faster without it
+        boolean distanceTableAllowed = longRunning || pathTask.getQueries().size() >= graph.getVertexCount();
+        long buildNanos = System.nanoTime() - buildStart;
+        RoutingEngine engine = new RoutingEngine(graph, options, distanceTableAllowed);
+        engine.recordStage(RoutingMetrics.Stage.PARSE, parseNanos);
+        engine.recordStage(RoutingMetrics.Stage.GRAPH_BUILD, buildNanos);
+        return engine;
+    }
+
+    private static void logMetrics(RoutingEngine engine) {
+        if (engine != null && engine.getMetrics() != null) {
+            logger.info("Metrics: {}", engine.getMetrics().summary());
         }
     }
-}
\ No newline at end of file
+}
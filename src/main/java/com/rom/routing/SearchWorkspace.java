@@ -0,0 +1,63 @@
+package com.rom.routing;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+
+/**
+ * Package-local reusable state of a single-source search: estimated time and predecessor of every vertex.
+ * It's allocated once per solver and reset in O(1) between searches by {@link #reset()}.
+ * <p>
+ * Every vertex carries a stamp of the search (epoch) which wrote its metadata last. Metadata with a stale stamp
+ * is treated as if the vertex hasn't been reached, so a reset just starts a new epoch instead of filling arrays.
+ * <p>
+ * Note! Stamp, estimated time and predecessor of a vertex are interleaved in one array,
+ * so reading all of them touches one cache line instead of three.
+ *
+ * @author Roman Katerinenko
+ */
+final class SearchWorkspace implements VertexMetadata {
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final int STRIDE = 3;
+    private static final int STAMP = 0;
+    private static final int ESTIMATED_TIME = 1;
+    private static final int PREDECESSOR = 2;
+
+    private final int[] metadata;
+    private int epoch;
+
+    SearchWorkspace(int verticesAmount) {
+        metadata = new int[verticesAmount * STRIDE];
+    }
+
+    /**
+     * Forgets metadata of all vertices.
+     */
+    void reset() {
+        if (++epoch == 0) {
+            // all 2^32 epochs are used, so stamps left from 2^32 searches ago would be taken as fresh ones
+            for (int i = STAMP; i < metadata.length; i += STRIDE) {
+                metadata[i] = 0;
+            }
+            epoch = 1;
+        }
+    }
+
+    @Override
+    public int getEstimatedTime(int vertex) {
+        int base = vertex * STRIDE;
+        return metadata[base + STAMP] == epoch ? metadata[base + ESTIMATED_TIME] : UNREACHED;
+    }
+
+    @Override
+    public int getPredecessor(int vertex) {
+        int base = vertex * STRIDE;
+        return metadata[base + STAMP] == epoch ? metadata[base + PREDECESSOR] : NO_VERTEX;
+    }
+
+    void update(int vertex, int estimatedTime, int predecessor) {
+        int base = vertex * STRIDE;
+        metadata[base + STAMP] = epoch;
+        metadata[base + ESTIMATED_TIME] = estimatedTime;
+        metadata[base + PREDECESSOR] = predecessor;
+    }
+}
@@ -0,0 +1,51 @@
+package com.rom.routing;
+
+/**
+ * Package-local immutable result of a complete single-source search: estimated time and predecessor of every vertex
+ * and reached vertices in the order the search settled them (ascending travel time).
+ * It answers any path or nearby query from its source without searching.
+ *
+ * @author Roman Katerinenko
+ * @see ShortestPathTreeCache
+ */
+final class ShortestPathTree implements VertexMetadata {
+    private final int source;
+    private final int[] estimatedTimes;
+    private final int[] predecessors;
+    private final int[] settledVertices;
+
+    ShortestPathTree(int source, int[] estimatedTimes, int[] predecessors, int[] settledVertices) {
+        this.source = source;
+        this.estimatedTimes = estimatedTimes;
+        this.predecessors = predecessors;
+        this.settledVertices = settledVertices;
+    }
+
+    int getSource() {
+        return source;
+    }
+
+    @Override
+    public int getEstimatedTime(int vertex) {
+        return estimatedTimes[vertex];
+    }
+
+    @Override
+    public int getPredecessor(int vertex) {
+        return predecessors[vertex];
+    }
+
+    /**
+     * @return amount of settled vertices including the source
+     */
+    int getSettledAmount() {
+        return settledVertices.length;
+    }
+
+    /**
+     * @param index position in settling order, the source is the first one
+     */
+    int getSettledVertex(int index) {
+        return settledVertices[index];
+    }
+}
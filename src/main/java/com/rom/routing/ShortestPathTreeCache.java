@@ -0,0 +1,89 @@
+package com.rom.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Package-local bounded LRU cache of {@link ShortestPathTree}s keyed by their source vertex.
+ * It's shared by all solvers of a batch, so access is synchronized.
+ * <p>
+ * A complete tree costs more than a search bounded by a query, so a tree is worth building only for a source
+ * which is queried repeatedly. The cache remembers recently queried sources ({@link #isRepeatedSource(int)}),
+ * so a tree is built on the second query from a source and serves all the later ones.
+ *
+ * @author Roman Katerinenko
+ */
+final class ShortestPathTreeCache {
+    // amount of recently queried sources remembered per cached tree
+    private static final int SOURCES_PER_TREE = 8;
+
+    private final Map<Integer, ShortestPathTree> trees;
+    private final Map<Integer, Boolean> recentSources;
+    private final int capacity;
+
+    /**
+     * @param capacity max amount of trees kept, 0 turns caching off
+     */
+    ShortestPathTreeCache(int capacity) {
+        this.capacity = capacity;
+        this.trees = new LruMap<>(capacity);
+        this.recentSources = new LruMap<>(capacity * SOURCES_PER_TREE);
+    }
+
+    boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * @return tree of the source or null if it isn't cached
+     */
+    synchronized ShortestPathTree get(int source) {
+        return trees.get(source);
+    }
+
+    synchronized void put(ShortestPathTree tree) {
+        if (isEnabled()) {
+            trees.put(tree.getSource(), tree);
+        }
+    }
+
+    /**
+     * Records a query from the source.
+     *
+     * @return true if the source has been queried recently, i.e. a tree of it is likely to be reused
+     */
+    synchronized boolean isRepeatedSource(int source) {
+        return isEnabled() && recentSources.put(source, Boolean.TRUE) != null;
+    }
+
+    /**
+     * @param stale tells which trees to leave out, e.g. the ones changed by an update of the graph
+     * @return cache of the same capacity with the rest of the trees, which doesn't remember recent sources
+     */
+    synchronized ShortestPathTreeCache copyWithout(Predicate<ShortestPathTree> stale) {
+        ShortestPathTreeCache copy = new ShortestPathTreeCache(capacity);
+        for (ShortestPathTree tree : trees.values()) {
+            if (!stale.test(tree)) {
+                copy.trees.put(tree.getSource(), tree);
+            }
+        }
+        return copy;
+    }
+
+    private static final class LruMap<K, V> extends LinkedHashMap<K, V> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        private LruMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+            return size() > capacity;
+        }
+    }
+}
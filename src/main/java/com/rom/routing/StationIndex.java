@@ -0,0 +1,80 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+
+import static com.rom.routing.Graph.NO_VERTEX;
+
+/**
+ * Package-local immutable two-way dictionary between station names and dense vertex ids.
+ * Name to id lookup is an open-addressing hash table with linear probing over a primitive array of ids,
+ * which is kept at most half full, so {@link #findVertex(String)} takes O(1) on average.
+ * <p>
+ * Note! Hash of a name is {@link String#hashCode()}, which is cached by the string itself,
+ * so query resolution costs one hash calculation per query string at most.
+ *
+ * @author Roman Katerinenko
+ */
+final class StationIndex {
+    private static final int EMPTY_SLOT = NO_VERTEX;
+
+    private final String[] names;
+    private final int[] slots;
+    private final int slotMask;
+
+    /**
+     * @param names station names indexed by vertex id, must be distinct
+     */
+    StationIndex(String[] names) {
+        this.names = names;
+        this.slots = buildSlots(names);
+        this.slotMask = slots.length - 1;
+    }
+
+    /**
+     * Builds the hash table of the names, which is also stored in graph snapshots ({@link GraphSnapshot}).
+     *
+     * @return slots with vertex ids or {@link Graph#NO_VERTEX} for empty ones, amount of slots is a power of two
+     */
+    static int[] buildSlots(String[] names) {
+        int capacity = Integer.highestOneBit(Math.max(names.length, 1) * 2 - 1) << 1;
+        int[] slots = new int[capacity];
+        int slotMask = capacity - 1;
+        Arrays.fill(slots, EMPTY_SLOT);
+        for (int vertex = 0; vertex < names.length; vertex++) {
+            int slot = firstSlotFor(names[vertex].hashCode(), slotMask);
+            while (slots[slot] != EMPTY_SLOT) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots[slot] = vertex;
+        }
+        return slots;
+    }
+
+    static int firstSlotFor(int hash, int slotMask) {
+        // spread higher bits to lower ones, since only lower bits are used for a slot
+        return (hash ^ (hash >>> 16)) & slotMask;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String getName(int vertex) {
+        return names[vertex];
+    }
+
+    /**
+     * @return id of the vertex or {@link Graph#NO_VERTEX} if there is no such station
+     */
+    int findVertex(String name) {
+        int slot = firstSlotFor(name.hashCode(), slotMask);
+        int vertex;
+        while ((vertex = slots[slot]) != EMPTY_SLOT) {
+            if (names[vertex].equals(name)) {
+                return vertex;
+            }
+            slot = (slot + 1) & slotMask;
+        }
+        return NO_VERTEX;
+    }
+}
@@ -0,0 +1,20 @@
+package com.rom.routing;
+
+/**
+ * Package-local read access to metadata a single-source search keeps for each vertex.
+ *
+ * @author Roman Katerinenko
+ * @see SearchWorkspace
+ * @see ShortestPathTree
+ */
+interface VertexMetadata {
+    /**
+     * @return travel time from the source or {@link SearchWorkspace#UNREACHED}
+     */
+    int getEstimatedTime(int vertex);
+
+    /**
+     * @return previous vertex on the path from the source or {@link Graph#NO_VERTEX}
+     */
+    int getPredecessor(int vertex);
+}
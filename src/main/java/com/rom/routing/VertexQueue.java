@@ -0,0 +1,34 @@
+package com.rom.routing;
+
+/**
+ * Package-local min-priority queue of vertex ids keyed by travel times, which searches settle vertices from.
+ * A vertex is in the queue at most once, its key can only be decreased.
+ *
+ * @author Roman Katerinenko
+ * @see IndexedMinHeap
+ * @see BucketQueue
+ */
+interface VertexQueue {
+    boolean isEmpty();
+
+    /**
+     * Inserts a vertex or, if it is already in the queue, decreases its key.
+     * The key of a vertex already in the queue must not be greater than the current one.
+     */
+    void insertOrDecrease(int vertex, int key);
+
+    /**
+     * @return the smallest key, the queue must not be empty
+     */
+    int getMinKey();
+
+    /**
+     * @return vertex with the smallest key, which is removed from the queue
+     */
+    int poll();
+
+    /**
+     * Removes all vertices.
+     */
+    void clear();
+}
@@ -0,0 +1,177 @@
+package com.rom.routing;
+
+import java.util.Arrays;
+
+/**
+ * Renumbers vertices of a {@link Graph} in reverse Cuthill-McKee order, so stations close in the network get close
+ * ids and their edges and search state lie close in memory: a breadth-first search over edges of both directions
+ * numbers neighbours of a vertex in ascending order of their degrees, starting every connected component from
+ * a vertex of the least degree, and the order is reversed at the end.
+ * <p>
+ * Edges of a vertex keep their order and only get new ids of their ends, and so do reverse edges.
+ * Searches take vertices in the same order and find the same routes as over the original graph,
+ * names are kept with vertices, so only the memory layout changes.
+ *
+ * @author Roman Katerinenko
+ * @see RoutingOptions#isVertexReordering()
+ */
+class VertexReordering {
+    private static final int NOT_NUMBERED = -1;
+
+    private final Graph graph;
+
+    VertexReordering(Graph graph) {
+        this.graph = graph;
+    }
+
+    Graph build() {
+        int[] newIds = computeOrder();
+        int verticesAmount = graph.getVertexCount();
+        int[] oldIds = new int[verticesAmount];
+        String[] names = new String[verticesAmount];
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            oldIds[newIds[vertex]] = vertex;
+            names[newIds[vertex]] = graph.getVertexName(vertex);
+        }
+        StationIndex stationIndex = new StationIndex(names);
+        int edgesAmount = graph.getEdgeCount();
+        int[] edgeOffsets = new int[verticesAmount + 1];
+        int[] edgeTargets = new int[edgesAmount];
+        int[] edgeWeights = new int[edgesAmount];
+        int edge = 0;
+        for (int newId = 0; newId < verticesAmount; newId++) {
+            int vertex = oldIds[newId];
+            edgeOffsets[newId] = edge;
+            for (int oldEdge = graph.getEdgesBegin(vertex); oldEdge < graph.getEdgesEnd(vertex); oldEdge++) {
+                edgeTargets[edge] = newIds[graph.getEdgeTarget(oldEdge)];
+                edgeWeights[edge++] = graph.getEdgeWeight(oldEdge);
+            }
+        }
+        edgeOffsets[verticesAmount] = edge;
+        if (!graph.hasReverseEdges()) {
+            return new ArrayGraph(stationIndex, edgeOffsets, edgeTargets, edgeWeights);
+        }
+        int[] reverseEdgeOffsets = new int[verticesAmount + 1];
+        int[] reverseEdgeSources = new int[edgesAmount];
+        int[] reverseEdgeWeights = new int[edgesAmount];
+        edge = 0;
+        for (int newId = 0; newId < verticesAmount; newId++) {
+            int vertex = oldIds[newId];
+            reverseEdgeOffsets[newId] = edge;
+            for (int oldEdge = graph.getReverseEdgesBegin(vertex); oldEdge < graph.getReverseEdgesEnd(vertex); oldEdge++) {
+                reverseEdgeSources[edge] = newIds[graph.getReverseEdgeSource(oldEdge)];
+                reverseEdgeWeights[edge++] = graph.getReverseEdgeWeight(oldEdge);
+            }
+        }
+        reverseEdgeOffsets[verticesAmount] = edge;
+        return new ArrayGraph(stationIndex, edgeOffsets, edgeTargets, edgeWeights,
+                reverseEdgeOffsets, reverseEdgeSources, reverseEdgeWeights);
+    }
+
+    /**
+     * @return new id of every vertex
+     */
+    int[] computeOrder() {
+        int verticesAmount = graph.getVertexCount();
+        int[] incomingOffsets;
+        int[] incomingSources;
+        if (graph.hasReverseEdges()) {
+            incomingOffsets = new int[verticesAmount + 1];
+            incomingSources = new int[graph.getEdgeCount()];
+            for (int vertex = 0; vertex < verticesAmount; vertex++) {
+                incomingOffsets[vertex] = graph.getReverseEdgesBegin(vertex);
+            }
+            incomingOffsets[verticesAmount] = graph.getEdgeCount();
+            for (int edge = 0; edge < incomingSources.length; edge++) {
+                incomingSources[edge] = graph.getReverseEdgeSource(edge);
+            }
+        } else {
+            // the same counting sort the builder lays reverse edges out with
+            int[] sources = new int[graph.getEdgeCount()];
+            int[] targets = new int[graph.getEdgeCount()];
+            for (int vertex = 0; vertex < verticesAmount; vertex++) {
+                for (int edge = graph.getEdgesBegin(vertex); edge < graph.getEdgesEnd(vertex); edge++) {
+                    sources[edge] = vertex;
+                    targets[edge] = graph.getEdgeTarget(edge);
+                }
+            }
+            incomingOffsets = GraphBuilder.countOffsets(targets, verticesAmount);
+            incomingSources = new int[sources.length];
+            GraphBuilder.scatter(targets, sources, new int[sources.length], incomingOffsets,
+                    incomingSources, new int[sources.length]);
+        }
+        int[] degrees = new int[verticesAmount];
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            degrees[vertex] = graph.getEdgesEnd(vertex) - graph.getEdgesBegin(vertex)
+                    + incomingOffsets[vertex + 1] - incomingOffsets[vertex];
+        }
+        int[] order = new int[verticesAmount];
+        int[] newIds = new int[verticesAmount];
+        Arrays.fill(newIds, NOT_NUMBERED);
+        long[] neighbours = new long[16];
+        int numbered = 0;
+        for (int start : byDegree(degrees)) {
+            if (newIds[start] != NOT_NUMBERED) {
+                continue;
+            }
+            newIds[start] = numbered;
+            order[numbered++] = start;
+            // order is the queue of the breadth-first search
+            for (int head = numbered - 1; head < numbered; head++) {
+                int vertex = order[head];
+                if (neighbours.length < degrees[vertex]) {
+                    neighbours = new long[2 * degrees[vertex]];
+                }
+                int neighboursAmount = 0;
+                for (int edge = graph.getEdgesBegin(vertex); edge < graph.getEdgesEnd(vertex); edge++) {
+                    neighboursAmount = addNeighbour(graph.getEdgeTarget(edge), degrees, newIds,
+                            neighbours, neighboursAmount);
+                }
+                for (int edge = incomingOffsets[vertex]; edge < incomingOffsets[vertex + 1]; edge++) {
+                    neighboursAmount = addNeighbour(incomingSources[edge], degrees, newIds,
+                            neighbours, neighboursAmount);
+                }
+                // neighbours are keyed by degree and then by id
+                Arrays.sort(neighbours, 0, neighboursAmount);
+                for (int i = 0; i < neighboursAmount; i++) {
+                    int neighbour = (int) neighbours[i];
+                    newIds[neighbour] = numbered;
+                    order[numbered++] = neighbour;
+                }
+            }
+        }
+        for (int vertex = 0; vertex < verticesAmount; vertex++) {
+            newIds[vertex] = verticesAmount - 1 - newIds[vertex];
+        }
+        return newIds;
+    }
+
+    /**
+     * Adds a vertex which isn't numbered yet to the neighbours and numbers it temporarily, so it's added once.
+     */
+    private static int addNeighbour(int vertex, int[] degrees, int[] newIds, long[] neighbours, int neighboursAmount) {
+        if (newIds[vertex] == NOT_NUMBERED) {
+            newIds[vertex] = Integer.MAX_VALUE;
+            neighbours[neighboursAmount++] = (long) degrees[vertex] << 32 | vertex;
+        }
+        return neighboursAmount;
+    }
+
+    /**
+     * @return vertices in ascending order of degrees, vertices of the same degree in order of ids
+     */
+    private static int[] byDegree(int[] degrees) {
+        int maxDegree = 0;
+        for (int degree : degrees) {
+            maxDegree = Math.max(maxDegree, degree);
+        }
+        int[] offsets = GraphBuilder.countOffsets(degrees, maxDegree + 1);
+        int[] vertices = new int[degrees.length];
+        int[] ids = new int[degrees.length];
+        for (int vertex = 0; vertex < ids.length; vertex++) {
+            ids[vertex] = vertex;
+        }
+        GraphBuilder.scatter(degrees, ids, new int[degrees.length], offsets, vertices, new int[degrees.length]);
+        return vertices;
+    }
+}
@@ -0,0 +1,48 @@
+package com.rom.routing.core;
+
+import java.util.List;
+
+/**
+ * Travel times from every station of one set to every station of another one. It's answered with a search
+ * per source station rather than per pair of stations.
+ *
+ * @author Roman Katerinenko
+ */
+public class MatrixQuery extends Query {
+    private final List<String> fromStations;
+    private final List<String> toStations;
+
+    /**
+     * @param fromStations source stations, at least one
+     * @param toStations   target stations, at least one
+     */
+    public MatrixQuery(List<String> fromStations, List<String> toStations) {
+        super(firstStation(fromStations, toStations));
+        this.fromStations = fromStations;
+        this.toStations = toStations;
+    }
+
+    // validates both sets before the superclass constructor takes the first source station
+    private static String firstStation(List<String> fromStations, List<String> toStations) {
+        if (fromStations.isEmpty()) {
+            throw new IllegalArgumentException("A matrix must have at least one source station");
+        }
+        if (toStations.isEmpty()) {
+            throw new IllegalArgumentException("A matrix must have at least one target station");
+        }
+        return fromStations.get(0);
+    }
+
+    @Override
+    public void accept(QueryVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    public List<String> getFromStations() {
+        return fromStations;
+    }
+
+    public List<String> getToStations() {
+        return toStations;
+    }
+}
@@ -0,0 +1,52 @@
+package com.rom.routing.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Corresponds to {@link MatrixQuery}: travel times between every source and every target station,
+ * {@link #NO_ROUTE} for pairs without a route, including unknown stations.
+ *
+ * @author Roman Katerinenko
+ */
+public class MatrixSolution implements Solution {
+    public static final int NO_ROUTE = -1;
+
+    private final List<String> fromStations;
+    private final List<String> toStations;
+    // row per source station
+    private final int[] travelTimes;
+
+    public MatrixSolution(MatrixQuery matrixQuery) {
+        this.fromStations = matrixQuery.getFromStations();
+        this.toStations = matrixQuery.getToStations();
+        this.travelTimes = new int[fromStations.size() * toStations.size()];
+        Arrays.fill(travelTimes, NO_ROUTE);
+    }
+
+    @Override
+    public void accept(Solutions.SolutionVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    public List<String> getFromStations() {
+        return fromStations;
+    }
+
+    public List<String> getToStations() {
+        return toStations;
+    }
+
+    /**
+     * @param from index of the source station
+     * @param to   index of the target station
+     * @return travel time or {@link #NO_ROUTE}
+     */
+    public int getTravelTime(int from, int to) {
+        return travelTimes[from * toStations.size() + to];
+    }
+
+    public void setTravelTime(int from, int to, int travelTime) {
+        travelTimes[from * toStations.size() + to] = travelTime;
+    }
+}
@@ -1,7 +1,12 @@
 package com.rom.routing.core;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 
 /**
  * Corresponds to successful {@link NearbyQuery}
@@ -9,17 +14,46 @@ import java.util.TreeSet;
  * @author Roman Katerinenko
  */
 public class NearbySolution implements Solution {
-    // sorted by travel time asc then by station name asc
-    private final Set<StationAndTime> nearbyStations = new TreeSet<>((s1, s2) -> {
+    private static final Comparator<StationAndTime> TIME_THEN_NAME_ORDER = (s1, s2) -> {
         if (s1.travelTime == s2.travelTime) {
             return s1.stationName.compareTo(s2.stationName);
         } else {
-            return s1.travelTime - s2.travelTime;
+            return Integer.compare(s1.travelTime, s2.travelTime);
+        }
+    };
+
+    // sorted by travel time asc then by station name asc
+    private final List<StationAndTime> nearbyStations = new ArrayList<>();
+    // unmodifiable view of the stations in their order, which are distinct already
+    private final Set<StationAndTime> nearbyStationsView = new AbstractSet<StationAndTime>() {
+        @Override
+        public Iterator<StationAndTime> iterator() {
+            return Collections.unmodifiableList(nearbyStations).iterator();
         }
-    });
 
+        @Override
+        public int size() {
+            return nearbyStations.size();
+        }
+    };
+
+    /**
+     * Keeps stations sorted by travel time and then by name, a station added twice is kept once.
+     * Stations added in ascending order of travel time (as a search settles them) are appended in O(1),
+     * only stations of the same travel time given out of name order are moved to their places.
+     */
     public void add(int travelTime, String stationName) {
-        nearbyStations.add(new StationAndTime(stationName, travelTime));
+        StationAndTime station = new StationAndTime(stationName, travelTime);
+        int size = nearbyStations.size();
+        int order = size == 0 ? -1 : TIME_THEN_NAME_ORDER.compare(nearbyStations.get(size - 1), station);
+        if (order < 0) {
+            nearbyStations.add(station);
+        } else if (order > 0) {
+            int position = Collections.binarySearch(nearbyStations, station, TIME_THEN_NAME_ORDER);
+            if (position < 0) {
+                nearbyStations.add(-position - 1, station);
+            }
+        }
     }
 
     @Override
@@ -27,8 +61,11 @@ public class NearbySolution implements Solution {
         visitor.visit(this);
     }
 
+    /**
+     * @return unmodifiable view of the stations sorted by travel time and then by name
+     */
     public Set<StationAndTime> getNearbyStations() {
-        return nearbyStations;
+        return nearbyStationsView;
     }
 
     public static class StationAndTime {
@@ -48,4 +85,4 @@ public class NearbySolution implements Solution {
             return travelTime;
         }
     }
-}
\ No newline at end of file
+}
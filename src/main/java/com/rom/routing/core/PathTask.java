@@ -2,6 +2,7 @@ package com.rom.routing.core;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Object representation of input. Contains paths ({@link Path}) and queries ({@link Query} and it's descendants).
@@ -12,7 +13,7 @@ import java.util.Collection;
  */
 public class PathTask {
     private final Collection<Path> paths = new ArrayList<>();
-    private final Collection<Query> queries = new ArrayList<>();
+    private final List<Query> queries = new ArrayList<>();
 
     public void addRoute(Path path) {
         paths.add(path);
@@ -26,6 +27,10 @@ public class PathTask {
         return paths;
     }
 
+    public List<Query> getQueries() {
+        return queries;
+    }
+
     public void runQueryVisitor(QueryVisitor queryVisitor) {
         queries.forEach(q -> q.accept(queryVisitor));
     }
@@ -7,4 +7,11 @@ public interface QueryVisitor {
     void visit(PathQuery pathQuery);
 
     void visit(NearbyQuery routeQuery);
+
+    /**
+     * Visitors written before matrix queries existed don't support them.
+     */
+    default void visit(MatrixQuery matrixQuery) {
+        throw new UnsupportedOperationException(getClass().getName() + " doesn't support matrix queries");
+    }
 }
\ No newline at end of file
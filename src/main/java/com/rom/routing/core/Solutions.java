@@ -33,5 +33,12 @@ public class Solutions {
         void visit(NearbySolution nearbySolution);
 
         void visit(EmptyNearbySolution emptyNearbySolution);
+
+        /**
+         * Visitors written before matrix queries existed don't support their solutions.
+         */
+        default void visit(MatrixSolution matrixSolution) {
+            throw new UnsupportedOperationException(getClass().getName() + " doesn't support matrix solutions");
+        }
     }
 }
\ No newline at end of file
@@ -2,71 +2,234 @@ package com.rom.routing.io;
 
 import com.rom.routing.core.EmptyNearbySolution;
 import com.rom.routing.core.EmptyRouteSolution;
+import com.rom.routing.core.MatrixSolution;
 import com.rom.routing.core.NearbySolution;
 import com.rom.routing.core.PathSolution;
 import com.rom.routing.core.Solution;
 import com.rom.routing.core.Solutions;
 
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Collection;
-
-import static java.lang.String.format;
+import java.util.List;
 
 /**
- * Private implementation of {@link Solutions.SolutionVisitor} to visit each type of {@link Solution}
- * and produce output accordingly.
+ * Implementation of {@link Solutions.SolutionVisitor} to visit each type of {@link Solution}
+ * and write it to an output stream as a line of UTF-8 text.
+ * <p>
+ * Solutions are encoded straight into a byte buffer of the writer, which goes to the stream when it's full
+ * and on {@link #flush()}, so output doesn't pile up in memory and the first solutions are written
+ * while others are still being searched for. Lines are separated by '\n', there is none after the last one
+ * unless every line is terminated, which an interactive client reading lines needs.
+ * <p>
+ * Note! Visitor methods can't throw {@link IOException}, so errors of the stream are rethrown
+ * as {@link UncheckedIOException}.
  *
  * @author Roman Katerinenko
  */
-public class SolutionsWriter implements Solutions.SolutionVisitor {
-    private final StringBuilder stringBuilder = new StringBuilder();
+public class SolutionsWriter implements Solutions.SolutionVisitor, Flushable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    // enough for any int and for any char encoded in UTF-8
+    private static final int MAX_ELEMENT_SIZE = 11;
+
+    private final OutputStream outputStream;
+    private final boolean terminateLines;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private boolean lineStarted;
+
+    public SolutionsWriter(OutputStream outputStream) {
+        this(outputStream, false);
+    }
+
+    /**
+     * @param terminateLines whether every line including the last one ends with '\n'
+     */
+    public SolutionsWriter(OutputStream outputStream, boolean terminateLines) {
+        this.outputStream = outputStream;
+        this.terminateLines = terminateLines;
+    }
 
     @Override
     public void visit(EmptyRouteSolution solution) {
-        stringBuilder.append(format("Error: No path from %s to %s\n", solution.getFromStation(), solution.getToStation()));
+        startLine();
+        append("Error: No path from ");
+        append(solution.getFromStation());
+        append(" to ");
+        append(solution.getToStation());
+        endLine();
     }
 
     @Override
     public void visit(EmptyNearbySolution solution) {
-        stringBuilder.append(format("Error: No near stations %s within %d sec.\n", solution.getStation(), solution.getTravelTime()));
+        startLine();
+        append("Error: No near stations ");
+        append(solution.getStation());
+        append(" within ");
+        append(solution.getTravelTime());
+        append(" sec.");
+        endLine();
     }
 
     @Override
     public void visit(PathSolution pathSolution) {
+        startLine();
         int counter = 0;
         Collection<String> stationsPath = pathSolution.getStationsPath();
         int stationsAmount = stationsPath.size();
         for (String station : stationsPath) {
-            stringBuilder.append(station);
+            append(station);
             if (counter++ < stationsAmount - 1) {
-                stringBuilder.append(" -> ");
+                append(" -> ");
             }
         }
-        stringBuilder.append(": ");
-        stringBuilder.append(pathSolution.getRouteTime());
-        stringBuilder.append('\n');
+        append(": ");
+        append(pathSolution.getRouteTime());
+        endLine();
     }
 
     @Override
     public void visit(NearbySolution nearbySolution) {
+        startLine();
         int counter = 0;
         int stationsAmount = nearbySolution.getNearbyStations().size();
         for (NearbySolution.StationAndTime stationAndTime : nearbySolution.getNearbyStations()) {
-            stringBuilder.append(stationAndTime.getStationName());
-            stringBuilder.append(": ");
-            stringBuilder.append(stationAndTime.getTravelTime());
+            append(stationAndTime.getStationName());
+            append(": ");
+            append(stationAndTime.getTravelTime());
             if (counter++ < stationsAmount - 1) {
-                stringBuilder.append(", ");
+                append(", ");
+            }
+        }
+        endLine();
+    }
+
+    /**
+     * Writes travel times of all pairs of stations row by row, e.g. "A -> C: 5, A -> D: -", where "-" means no route.
+     */
+    @Override
+    public void visit(MatrixSolution matrixSolution) {
+        startLine();
+        List<String> fromStations = matrixSolution.getFromStations();
+        List<String> toStations = matrixSolution.getToStations();
+        for (int from = 0; from < fromStations.size(); from++) {
+            for (int to = 0; to < toStations.size(); to++) {
+                if (from > 0 || to > 0) {
+                    append(", ");
+                }
+                append(fromStations.get(from));
+                append(" -> ");
+                append(toStations.get(to));
+                append(": ");
+                int travelTime = matrixSolution.getTravelTime(from, to);
+                if (travelTime == MatrixSolution.NO_ROUTE) {
+                    append("-");
+                } else {
+                    append(travelTime);
+                }
+            }
+        }
+        endLine();
+    }
+
+    /**
+     * Writes a line of text, e.g. an error message, as if it was a solution.
+     */
+    public void writeLine(String line) {
+        startLine();
+        append(line);
+        endLine();
+    }
+
+    /**
+     * Writes buffered solutions to the stream and flushes it.
+     */
+    @Override
+    public void flush() {
+        writeBuffer();
+        try {
+            outputStream.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void startLine() {
+        if (lineStarted && !terminateLines) {
+            ensureCapacity(1);
+            buffer[bufferPosition++] = '\n';
+        }
+        lineStarted = true;
+    }
+
+    private void endLine() {
+        if (terminateLines) {
+            ensureCapacity(1);
+            buffer[bufferPosition++] = '\n';
+        }
+    }
+
+    private void append(String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            ensureCapacity(MAX_ELEMENT_SIZE);
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[bufferPosition++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[bufferPosition++] = (byte) (0xC0 | (c >> 6));
+                buffer[bufferPosition++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                buffer[bufferPosition++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[bufferPosition++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[bufferPosition++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[bufferPosition++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[bufferPosition++] = '?'; // unpaired surrogate, the same as String#getBytes() does
+            } else {
+                buffer[bufferPosition++] = (byte) (0xE0 | (c >> 12));
+                buffer[bufferPosition++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[bufferPosition++] = (byte) (0x80 | (c & 0x3F));
             }
         }
-        stringBuilder.append('\n');
     }
 
-    public String getString() {
-        int length = stringBuilder.length();
-        if (length > 0) {
-            // here we delete last '\n'
-            stringBuilder.deleteCharAt(length - 1);
+    private void append(int number) {
+        ensureCapacity(MAX_ELEMENT_SIZE);
+        long value = number;
+        if (value < 0) {
+            buffer[bufferPosition++] = '-';
+            value = -value;
+        }
+        int digitsEnd = bufferPosition;
+        do {
+            buffer[digitsEnd++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // digits are written from the lowest one, so they are reversed in place
+        for (int left = bufferPosition, right = digitsEnd - 1; left < right; left++, right--) {
+            byte digit = buffer[left];
+            buffer[left] = buffer[right];
+            buffer[right] = digit;
+        }
+        bufferPosition = digitsEnd;
+    }
+
+    private void ensureCapacity(int bytesAmount) {
+        if (bufferPosition + bytesAmount > buffer.length) {
+            writeBuffer();
+        }
+    }
+
+    private void writeBuffer() {
+        try {
+            outputStream.write(buffer, 0, bufferPosition);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return stringBuilder.toString();
+        bufferPosition = 0;
     }
 }
@@ -1,72 +1,160 @@
 package com.rom.routing.io;
 
+import com.rom.routing.core.MatrixQuery;
 import com.rom.routing.core.NearbyQuery;
 import com.rom.routing.core.Path;
 import com.rom.routing.core.PathQuery;
 import com.rom.routing.core.PathTask;
+import com.rom.routing.core.Query;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.Scanner;
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.NoSuchElementException;
 
-import static com.rom.routing.RoutingService.CHARSET;
-import static java.util.regex.Pattern.UNICODE_CASE;
-import static java.util.regex.Pattern.UNICODE_CHARACTER_CLASS;
-import static java.util.regex.Pattern.compile;
+import static com.rom.routing.io.TaskTokenizer.NO_SUFFIX;
 
 /**
+ * Parses a task description with a single pass of {@link TaskTokenizer} over the input, without regular expressions
+ * and without making strings of anything but distinct station names.
+ *
  * @author Roman Katerinenko
  */
 public class TaskParser {
-    private static final Pattern STATION_NAME_PATTERN = compile("[\\w[0-9]]+", UNICODE_CHARACTER_CLASS | UNICODE_CASE);
-    private static final Pattern STATION_NAME_WITH_COMMA_PATTERN = compile("\\w+,", UNICODE_CHARACTER_CLASS | UNICODE_CASE);
-    private static final Pattern STATION_NAME_WITH_COLON_PATTERN = compile("\\w+:", UNICODE_CHARACTER_CLASS | UNICODE_CASE);
-    private static final Pattern EDGE_SIGN_PATTERN = compile("->");
+    private static final String EDGE_SIGN = "->";
     private static final String ROUTE_QUERY_KEYWORD = "path";
     private static final String NEARBY_QUERY_KEYWORD = "near";
+    private static final String MATRIX_QUERY_KEYWORD = "matrix";
+    private static final char STATIONS_SEPARATOR = ',';
 
     private TaskParser() {
         throw new IllegalStateException("Don't call this constructor");
     }
 
     /**
-     * @param inputStream input stream
+     * @param inputStream input stream, which is closed when parsing is over
      * @return null in case of any error during parsing, otherwise not null.
      */
     public static PathTask parse(InputStream inputStream) {
         PathTask pathTask = new PathTask();
-        try (Scanner scanner = new Scanner(inputStream, CHARSET)) {
-            int edgesAmount = scanner.nextInt();
-            for (int i = 0; i < edgesAmount; i++) {
-                String fromStation = scanner.next(STATION_NAME_PATTERN);
-                scanner.next(EDGE_SIGN_PATTERN);
-                String toStation = scanner.next(STATION_NAME_WITH_COLON_PATTERN);
-                toStation = toStation.substring(0, toStation.length() - 1);
-                int travelTime = scanner.nextInt();
-                pathTask.addRoute(new Path(fromStation, toStation, travelTime));
-            }
-            while (scanner.hasNext()) {
-                String queryType = scanner.next();
-                switch (queryType) {
-                    case ROUTE_QUERY_KEYWORD:
-                        String fromStation = scanner.next(STATION_NAME_PATTERN);
-                        scanner.next(EDGE_SIGN_PATTERN);
-                        String toStation = scanner.next(STATION_NAME_PATTERN);
-                        pathTask.addQuery(new PathQuery(fromStation, toStation));
-                        break;
-                    case NEARBY_QUERY_KEYWORD:
-                        fromStation = scanner.next(STATION_NAME_WITH_COMMA_PATTERN);
-                        fromStation = fromStation.substring(0, fromStation.length() - 1);
-                        int travelTime = scanner.nextInt();
-                        pathTask.addQuery(new NearbyQuery(fromStation, travelTime));
-                        break;
-                    default:
-                        return null;
-                }
-            }
+        try (TaskTokenizer tokenizer = new TaskTokenizer(inputStream)) {
+            readPaths(tokenizer, pathTask);
+            readQueries(tokenizer, pathTask);
         } catch (Exception e) {
             return null; // ignore - no logging available
         }
         return pathTask;
     }
-}
\ No newline at end of file
+
+    /**
+     * Parses queries only, which is the whole input when the graph is taken from elsewhere, e.g. a snapshot.
+     *
+     * @param inputStream input stream, which is closed when parsing is over
+     * @return null in case of any error during parsing, otherwise task without paths.
+     */
+    public static PathTask parseQueries(InputStream inputStream) {
+        PathTask pathTask = new PathTask();
+        try (TaskTokenizer tokenizer = new TaskTokenizer(inputStream)) {
+            readQueries(tokenizer, pathTask);
+        } catch (Exception e) {
+            return null; // ignore - no logging available
+        }
+        return pathTask;
+    }
+
+    /**
+     * Reads the amount of paths and then the paths.
+     *
+     * @throws InputMismatchException if the paths are wrong
+     * @throws NoSuchElementException if the input ends before the last path
+     */
+    static void readPaths(TaskTokenizer tokenizer, PathTask pathTask) throws IOException {
+        tokenizer.advance();
+        int edgesAmount = tokenizer.tokenAsInt();
+        for (int i = 0; i < edgesAmount; i++) {
+            tokenizer.advance();
+            String fromStation = tokenizer.tokenAsName(NO_SUFFIX);
+            expect(tokenizer, EDGE_SIGN);
+            tokenizer.advance();
+            String toStation = tokenizer.tokenAsName(':');
+            tokenizer.advance();
+            int travelTime = tokenizer.tokenAsInt();
+            pathTask.addRoute(new Path(fromStation, toStation, travelTime));
+        }
+    }
+
+    /**
+     * Reads a query, the keyword of which is the next token.
+     *
+     * @param singleLine whether the query must end in the line of the keyword, then a short line is rejected
+     *                   rather than completed with tokens of the next lines
+     * @throws InputMismatchException if the query is wrong
+     * @throws NoSuchElementException if the input ends before the end of the query
+     */
+    static Query readQuery(TaskTokenizer tokenizer, boolean singleLine) throws IOException {
+        tokenizer.advance();
+        if (tokenizer.tokenIs(ROUTE_QUERY_KEYWORD)) {
+            advanceInQuery(tokenizer, singleLine);
+            String fromStation = tokenizer.tokenAsName(NO_SUFFIX);
+            advanceInQuery(tokenizer, singleLine);
+            checkToken(tokenizer, EDGE_SIGN);
+            advanceInQuery(tokenizer, singleLine);
+            String toStation = tokenizer.tokenAsName(NO_SUFFIX);
+            return new PathQuery(fromStation, toStation);
+        } else if (tokenizer.tokenIs(NEARBY_QUERY_KEYWORD)) {
+            advanceInQuery(tokenizer, singleLine);
+            String fromStation = tokenizer.tokenAsName(',');
+            advanceInQuery(tokenizer, singleLine);
+            int travelTime = tokenizer.tokenAsInt();
+            return new NearbyQuery(fromStation, travelTime);
+        } else if (tokenizer.tokenIs(MATRIX_QUERY_KEYWORD)) {
+            List<String> fromStations = readStations(tokenizer, singleLine);
+            advanceInQuery(tokenizer, singleLine);
+            checkToken(tokenizer, EDGE_SIGN);
+            List<String> toStations = readStations(tokenizer, singleLine);
+            return new MatrixQuery(fromStations, toStations);
+        }
+        throw new InputMismatchException();
+    }
+
+    /**
+     * Reads stations separated by commas, e.g. "A, B, C", which are the next tokens.
+     */
+    private static List<String> readStations(TaskTokenizer tokenizer, boolean singleLine) throws IOException {
+        List<String> stations = new ArrayList<>();
+        while (true) {
+            advanceInQuery(tokenizer, singleLine);
+            if (!tokenizer.tokenEndsWith(STATIONS_SEPARATOR)) {
+                stations.add(tokenizer.tokenAsName(NO_SUFFIX));
+                return stations;
+            }
+            stations.add(tokenizer.tokenAsName(STATIONS_SEPARATOR));
+        }
+    }
+
+    private static void readQueries(TaskTokenizer tokenizer, PathTask pathTask) throws IOException {
+        while (tokenizer.hasNext()) {
+            pathTask.addQuery(readQuery(tokenizer, false));
+        }
+    }
+
+    private static void expect(TaskTokenizer tokenizer, String token) throws IOException {
+        tokenizer.advance();
+        checkToken(tokenizer, token);
+    }
+
+    private static void checkToken(TaskTokenizer tokenizer, String token) {
+        if (!tokenizer.tokenIs(token)) {
+            throw new InputMismatchException();
+        }
+    }
+
+    private static void advanceInQuery(TaskTokenizer tokenizer, boolean singleLine) throws IOException {
+        if (singleLine && tokenizer.isLineEnded()) {
+            throw new InputMismatchException();
+        }
+        tokenizer.advance();
+    }
+}
@@ -0,0 +1,74 @@
+package com.rom.routing.io;
+
+import com.rom.routing.core.PathTask;
+import com.rom.routing.core.Query;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a task description incrementally: paths first and then queries one line at a time, as they come.
+ * Unlike {@link TaskParser}, which needs the whole input to be over, it suits a long-running service reading
+ * an endless stream of queries, e.g. from a socket.
+ * <p>
+ * A query must take exactly one line. A wrong line doesn't stop reading, the next query is read from the next line.
+ *
+ * @author Roman Katerinenko
+ */
+public final class TaskReader implements Closeable {
+    private final TaskTokenizer tokenizer;
+
+    /**
+     * @param inputStream input stream, which is closed by {@link #close()}
+     */
+    public TaskReader(InputStream inputStream) {
+        this.tokenizer = new TaskTokenizer(inputStream);
+    }
+
+    /**
+     * Reads the amount of paths and then the paths.
+     *
+     * @return null if the paths are wrong, otherwise task without queries
+     */
+    public PathTask readPaths() throws IOException {
+        PathTask pathTask = new PathTask();
+        try {
+            TaskParser.readPaths(tokenizer, pathTask);
+        } catch (NoSuchElementException e) { // InputMismatchException included
+            return null;
+        }
+        return pathTask;
+    }
+
+    /**
+     * Waits for the next query if there is none yet.
+     *
+     * @return false if the input is over
+     */
+    public boolean hasNextQuery() throws IOException {
+        return tokenizer.hasNext();
+    }
+
+    /**
+     * @return the query of the next line or null if the line is wrong
+     */
+    public Query readQuery() throws IOException {
+        try {
+            Query query = TaskParser.readQuery(tokenizer, true);
+            if (tokenizer.isLineEnded()) {
+                return query;
+            }
+        } catch (NoSuchElementException e) {
+            // the rest of the wrong line is skipped below
+        }
+        tokenizer.skipLine();
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        tokenizer.close();
+    }
+}
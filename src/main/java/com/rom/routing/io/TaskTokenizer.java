@@ -0,0 +1,339 @@
+package com.rom.routing.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Package-local streaming tokenizer of a task description. It reads UTF-8 bytes through its own buffer, decodes them
+ * straight into a reusable token buffer and splits tokens by whitespace ({@link Character#isWhitespace(int)}),
+ * the same way {@link java.util.Scanner} does by default.
+ * <p>
+ * A token is examined in place ({@link #tokenIs(String)}, {@link #tokenAsInt()}), so keywords, signs and numbers
+ * don't produce strings at all. Station names are interned by {@link #tokenAsName(int)}: every distinct name
+ * becomes a string once, repeated names are found by hash of the token characters.
+ * <p>
+ * Station name characters are the ones {@code \w} matches with {@link java.util.regex.Pattern#UNICODE_CHARACTER_CLASS}:
+ * alphabetic characters, decimal digits, combining marks, connector punctuation and join controls.
+ * Malformed UTF-8 sequences are decoded as U+FFFD, which isn't allowed in names.
+ *
+ * @author Roman Katerinenko
+ */
+final class TaskTokenizer implements Closeable {
+    static final int NO_SUFFIX = -1;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int END_OF_INPUT = -1;
+    private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+
+    private final InputStream inputStream;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final NameTable names = new NameTable();
+    private int bufferPosition;
+    private int bufferLimit;
+
+    private char[] token = new char[64];
+    private int tokenLength;
+    // the first code point after whitespace, which is already read while looking for a token or a line end
+    private int pendingCodePoint = END_OF_INPUT;
+    // whether the whitespace after the current token ends a line
+    private boolean lineEnded = true;
+
+    TaskTokenizer(InputStream inputStream) {
+        this.inputStream = inputStream;
+    }
+
+    /**
+     * @return true if there is one more token
+     */
+    boolean hasNext() throws IOException {
+        if (pendingCodePoint == END_OF_INPUT) {
+            int codePoint;
+            do {
+                codePoint = readCodePoint();
+            } while (codePoint != END_OF_INPUT && Character.isWhitespace(codePoint));
+            pendingCodePoint = codePoint;
+        }
+        return pendingCodePoint != END_OF_INPUT;
+    }
+
+    /**
+     * Reads the next token, which can be examined by other methods.
+     *
+     * @throws NoSuchElementException if the input is exhausted
+     */
+    void advance() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        tokenLength = 0;
+        int codePoint = pendingCodePoint;
+        pendingCodePoint = END_OF_INPUT;
+        do {
+            appendToToken(codePoint);
+            codePoint = readCodePoint();
+        } while (codePoint != END_OF_INPUT && !Character.isWhitespace(codePoint));
+        // trailing spaces and tabs don't keep the token from being the last one in its line
+        while (codePoint != END_OF_INPUT && !isLineEnd(codePoint) && Character.isWhitespace(codePoint)) {
+            codePoint = readCodePoint();
+        }
+        lineEnded = codePoint == END_OF_INPUT || isLineEnd(codePoint);
+        if (!lineEnded) {
+            pendingCodePoint = codePoint;
+        }
+    }
+
+    /**
+     * @return true if the current token is the last one in its line. The line end is already read,
+     * so the next token is read only when asked for, which matters for interactive input.
+     */
+    boolean isLineEnded() {
+        return lineEnded;
+    }
+
+    /**
+     * Skips the rest of the line of the current token.
+     */
+    void skipLine() throws IOException {
+        if (!lineEnded) {
+            // the first code point of the next token of the line may be read already
+            pendingCodePoint = END_OF_INPUT;
+            int codePoint;
+            do {
+                codePoint = readCodePoint();
+            } while (codePoint != END_OF_INPUT && codePoint != '\n');
+            lineEnded = true;
+        }
+    }
+
+    boolean tokenIs(String text) {
+        if (text.length() != tokenLength) {
+            return false;
+        }
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    boolean tokenEndsWith(char c) {
+        return tokenLength > 0 && token[tokenLength - 1] == c;
+    }
+
+    /**
+     * @throws InputMismatchException if the token isn't a decimal int
+     */
+    int tokenAsInt() {
+        int i = 0;
+        boolean negative = false;
+        if (tokenLength > 1 && (token[0] == '-' || token[0] == '+')) {
+            negative = token[0] == '-';
+            i = 1;
+        }
+        if (i == tokenLength) {
+            throw new InputMismatchException();
+        }
+        long value = 0;
+        for (; i < tokenLength; i++) {
+            int digit = Character.digit(token[i], 10);
+            if (digit < 0) {
+                throw new InputMismatchException();
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new InputMismatchException();
+            }
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new InputMismatchException();
+        }
+        return (int) value;
+    }
+
+    /**
+     * @param suffix character the token must end with, which isn't a part of the name, or {@link #NO_SUFFIX}
+     * @return interned station name
+     * @throws InputMismatchException if the token isn't a station name followed by the suffix
+     */
+    String tokenAsName(int suffix) {
+        int nameLength = tokenLength;
+        if (suffix != NO_SUFFIX) {
+            if (nameLength == 0 || token[nameLength - 1] != suffix) {
+                throw new InputMismatchException();
+            }
+            nameLength--;
+        }
+        if (nameLength == 0) {
+            throw new InputMismatchException();
+        }
+        for (int i = 0; i < nameLength; ) {
+            int codePoint = Character.codePointAt(token, i, nameLength);
+            if (!isNameCharacter(codePoint)) {
+                throw new InputMismatchException();
+            }
+            i += Character.charCount(codePoint);
+        }
+        return names.intern(token, nameLength);
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private static boolean isLineEnd(int codePoint) {
+        return codePoint == '\n' || codePoint == '\r';
+    }
+
+    private static boolean isNameCharacter(int codePoint) {
+        if (codePoint < 0x80) {
+            return (codePoint >= 'a' && codePoint <= 'z') || (codePoint >= 'A' && codePoint <= 'Z')
+                    || (codePoint >= '0' && codePoint <= '9') || codePoint == '_';
+        }
+        if (Character.isAlphabetic(codePoint) || Character.isDigit(codePoint)) {
+            return true;
+        }
+        switch (Character.getType(codePoint)) {
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.CONNECTOR_PUNCTUATION:
+                return true;
+            default:
+                return codePoint == 0x200C || codePoint == 0x200D; // join controls
+        }
+    }
+
+    private void appendToToken(int codePoint) {
+        if (tokenLength + 2 > token.length) {
+            token = Arrays.copyOf(token, token.length * 2);
+        }
+        if (Character.isBmpCodePoint(codePoint)) {
+            token[tokenLength++] = (char) codePoint;
+        } else {
+            token[tokenLength++] = Character.highSurrogate(codePoint);
+            token[tokenLength++] = Character.lowSurrogate(codePoint);
+        }
+    }
+
+    private int readCodePoint() throws IOException {
+        int first = readByte();
+        if (first < 0x80) {
+            return first; // ASCII or END_OF_INPUT
+        }
+        int continuationBytes;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            continuationBytes = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            continuationBytes = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            continuationBytes = 3;
+            codePoint = first & 0x07;
+        } else {
+            return REPLACEMENT_CHARACTER;
+        }
+        for (int i = 0; i < continuationBytes; i++) {
+            int next = peekByte();
+            if ((next & 0xC0) != 0x80) {
+                return REPLACEMENT_CHARACTER; // keep the unexpected byte for the next code point
+            }
+            bufferPosition++;
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        boolean overlong = (continuationBytes == 1 && codePoint < 0x80)
+                || (continuationBytes == 2 && codePoint < 0x800)
+                || (continuationBytes == 3 && codePoint < 0x10000);
+        if (overlong || codePoint > Character.MAX_CODE_POINT
+                || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return REPLACEMENT_CHARACTER;
+        }
+        return codePoint;
+    }
+
+    private int readByte() throws IOException {
+        int next = peekByte();
+        if (next != END_OF_INPUT) {
+            bufferPosition++;
+        }
+        return next;
+    }
+
+    private int peekByte() throws IOException {
+        if (bufferPosition == bufferLimit) {
+            bufferLimit = inputStream.read(buffer, 0, buffer.length);
+            bufferPosition = 0;
+            if (bufferLimit <= 0) {
+                bufferLimit = 0;
+                return END_OF_INPUT;
+            }
+        }
+        return buffer[bufferPosition] & 0xFF;
+    }
+
+    /**
+     * Open-addressing set of names, which finds a name by characters without making a string of them.
+     */
+    private static final class NameTable {
+        private String[] slots = new String[1024];
+        private int size;
+
+        String intern(char[] chars, int length) {
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + chars[i]; // the same as String#hashCode()
+            }
+            int mask = slots.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            String name;
+            while ((name = slots[slot]) != null) {
+                if (name.hashCode() == hash && matches(name, chars, length)) {
+                    return name;
+                }
+                slot = (slot + 1) & mask;
+            }
+            name = new String(chars, 0, length);
+            slots[slot] = name;
+            if (++size * 2 > slots.length) {
+                grow();
+            }
+            return name;
+        }
+
+        private static boolean matches(String name, char[] chars, int length) {
+            if (name.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (name.charAt(i) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void grow() {
+            String[] oldSlots = slots;
+            slots = new String[oldSlots.length * 2];
+            int mask = slots.length - 1;
+            for (String name : oldSlots) {
+                if (name != null) {
+                    int hash = name.hashCode();
+                    int slot = (hash ^ (hash >>> 16)) & mask;
+                    while (slots[slot] != null) {
+                        slot = (slot + 1) & mask;
+                    }
+                    slots[slot] = name;
+                }
+            }
+        }
+    }
+}